@@ -0,0 +1,29 @@
+package classification;
+
+/**
+ * The bundled datasets benchmarked, by name, with paths relative to the project directory.
+ */
+final class BenchmarkDatasets {
+    private BenchmarkDatasets(){
+    }
+
+    static String trainFileOf(final String dataset){
+        switch(dataset){
+            case "balance": return "data/balance/balance-scale.train";
+            case "nursery": return "data/nursery/nursery.data.train";
+            case "led": return "data/led/led.train";
+            case "poker": return "data/poker/poker.train";
+            default: throw new IllegalArgumentException("Unknown dataset " + dataset + "!");
+        }
+    }
+
+    static String testFileOf(final String dataset){
+        switch(dataset){
+            case "balance": return "data/balance/balance-scale.test";
+            case "nursery": return "data/nursery/nursery.data.test";
+            case "led": return "data/led/led.test";
+            case "poker": return "data/poker/poker.test";
+            default: throw new IllegalArgumentException("Unknown dataset " + dataset + "!");
+        }
+    }
+}
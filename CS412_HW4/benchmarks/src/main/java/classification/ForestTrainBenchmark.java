@@ -0,0 +1,47 @@
+package classification;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RandomForest.train() on every bundled dataset at several forest sizes, seeded by the forest size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForestTrainBenchmark {
+    @Param({"balance", "nursery", "led", "poker"})
+    String dataset;
+
+    @Param({"10", "50", "100"})
+    int forestSize;
+
+    private RandomForest _randomForest;
+
+    @Setup
+    public void setUp() throws Exception{
+        _randomForest = new RandomForest(BenchmarkDatasets.trainFileOf(dataset), BenchmarkDatasets.testFileOf(dataset), forestSize);
+        _randomForest.setSeed(forestSize);
+        _randomForest.readTrainData();
+    }
+
+    @Benchmark
+    public RandomForest train() throws Exception{
+        _randomForest.train();
+        return _randomForest;
+    }
+}
@@ -0,0 +1,78 @@
+package classification;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Split Gini indexes of every attribute of a bundled dataset's root node, by the scalar and the Vector API kernels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GiniBenchmark {
+    @Param({"balance", "nursery", "led", "poker"})
+    String dataset;
+
+    @Param({"scalar", "vector"})
+    String kernel;
+
+    private GiniImpurity.GiniKernel _kernel;
+    private int _labelOptions;
+    private int[] _attrOptions;
+    private int[][] _avcSets;
+    private int _sampleWeight;
+
+    @Setup
+    public void setUp() throws Exception{
+        if(kernel.equals("vector")){
+            _kernel = GiniImpurity.loadVectorKernel();
+            if(_kernel == null)
+                throw new IllegalStateException("Run with --add-modules jdk.incubator.vector on a machine of 256-bit vectors for the Vector API kernel!");
+        } else {
+            _kernel = GiniImpurity.SCALAR_KERNEL;
+        }
+
+        DecisionTree decisionTree = new DecisionTree(BenchmarkDatasets.trainFileOf(dataset), BenchmarkDatasets.testFileOf(dataset));
+        decisionTree.readTrainData();
+        Dataset trainData = decisionTree._trainData;
+        int sampleSize = trainData.getSampleSize();
+        int[] sampleIndexes = new int[sampleSize];
+        for(int i = 0; i < sampleSize; i++)
+            sampleIndexes[i] = i;
+        boolean[] attrs = new boolean[trainData.getAttrCount()];
+        Arrays.fill(attrs, true);
+
+        _labelOptions = trainData.getLabelOptions();
+        _attrOptions = trainData.getAttrOptions();
+        AVCHistogram histogram = new AVCHistogram(_labelOptions, _attrOptions,
+                AVCHistogram.countLabels(trainData, null, sampleIndexes, 0, sampleSize));
+        histogram.countAttrs(trainData, null, sampleIndexes, 0, sampleSize, attrs, false);
+        _avcSets = new int[attrs.length][];
+        for(int i = 0; i < attrs.length; i++)
+            _avcSets[i] = histogram.getAVCSet(i);
+        _sampleWeight = histogram.getTotal();
+    }
+
+    @Benchmark
+    public double giniIndexOnAttrs(){
+        double sum = 0;
+        for(int i = 0; i < _avcSets.length; i++)
+            sum += _kernel.giniIndexOnAttr(_avcSets[i], _attrOptions[i], _labelOptions, _sampleWeight);
+        return sum;
+    }
+}
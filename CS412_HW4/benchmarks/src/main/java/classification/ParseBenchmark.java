@@ -0,0 +1,47 @@
+package classification;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Classifier.readTrainData() on every bundled dataset, from the text file and from its .dtbin cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({"balance", "nursery", "led", "poker"})
+    String dataset;
+
+    @Param({"false", "true"})
+    boolean datasetCache;
+
+    private DecisionTree _decisionTree;
+
+    @Setup
+    public void setUp() throws Exception{
+        _decisionTree = new DecisionTree(BenchmarkDatasets.trainFileOf(dataset), BenchmarkDatasets.testFileOf(dataset));
+        _decisionTree.setDatasetCache(datasetCache);
+        _decisionTree.readTrainData(); // Writes the cache if missing
+    }
+
+    @Benchmark
+    public Dataset readTrainData() throws Exception{
+        _decisionTree.readTrainData();
+        return _decisionTree._trainData;
+    }
+}
@@ -0,0 +1,78 @@
+package classification;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Prediction on every bundled dataset's test data by a trained classifier:
+ *   predictSample() one test sample per operation, cycling through the test data,
+ *   evaluateQuality() the whole test data per operation.
+ * Classifiers are the decision tree, then random forests of 10, 50 and 100 trees,
+ * the last also behind a prediction cache that the warmup fills with the test samples.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredictBenchmark {
+    @Param({"balance", "nursery", "led", "poker"})
+    String dataset;
+
+    @Param({"DecisionTree", "RandomForest-10", "RandomForest-50", "RandomForest-100", "RandomForest-100-cached"})
+    String classifier;
+
+    private Classifier _classifier;
+    private int[][] _testSamples;
+    private int _nextSample;
+
+    @Setup
+    public void setUp() throws Exception{
+        String trainFileName = BenchmarkDatasets.trainFileOf(dataset);
+        String testFileName = BenchmarkDatasets.testFileOf(dataset);
+        if(classifier.equals("DecisionTree")){
+            _classifier = new DecisionTree(trainFileName, testFileName);
+        } else {
+            String[] parts = classifier.split("-");
+            int forestSize = Integer.parseInt(parts[1]);
+            RandomForest randomForest = new RandomForest(trainFileName, testFileName, forestSize);
+            randomForest.setSeed(forestSize);
+            if(parts.length > 2)
+                randomForest.setPredictionCacheCapacity(1 << 16);
+            _classifier = randomForest;
+        }
+        _classifier.readDataFromFiles();
+        _classifier.train();
+
+        Dataset testData = _classifier._testData;
+        _testSamples = new int[_classifier._testSampleSize][];
+        for(int i = 0; i < _testSamples.length; i++)
+            _testSamples[i] = testData.getSample(i, new int[_classifier.getAttrCount()]);
+        _nextSample = 0;
+    }
+
+    @Benchmark
+    public int predictSample() throws Exception{
+        int[] sampleAttr = _testSamples[_nextSample];
+        _nextSample = _nextSample + 1 == _testSamples.length ? 0 : _nextSample + 1;
+        return _classifier.predictSample(sampleAttr);
+    }
+
+    @Benchmark
+    public int[][] evaluateQuality() throws Exception{
+        _classifier.evaluateQuality();
+        return _classifier._confusionMatrix;
+    }
+}
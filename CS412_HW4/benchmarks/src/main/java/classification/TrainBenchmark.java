@@ -0,0 +1,49 @@
+package classification;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DecisionTreeKernel.train() on every bundled dataset, as parsed and with duplicate samples collapsed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrainBenchmark {
+    @Param({"balance", "nursery", "led", "poker"})
+    String dataset;
+
+    @Param({"false", "true"})
+    boolean collapseDuplicates;
+
+    private Dataset _trainData;
+
+    @Setup
+    public void setUp() throws Exception{
+        DecisionTree decisionTree = new DecisionTree(BenchmarkDatasets.trainFileOf(dataset), BenchmarkDatasets.testFileOf(dataset));
+        decisionTree.setCollapseDuplicates(collapseDuplicates);
+        decisionTree.readTrainData();
+        _trainData = decisionTree._trainData;
+    }
+
+    @Benchmark
+    public DecisionTreeKernel train() throws Exception{
+        DecisionTreeKernel decisionTreeKernel = new DecisionTreeKernel(false, _trainData, null, null);
+        decisionTreeKernel.train();
+        return decisionTreeKernel;
+    }
+}
@@ -0,0 +1,101 @@
+package classification;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Split Gini indexes on the Vector API, loaded by GiniImpurity when the jdk.incubator.vector module is present.
+ *
+ * Each of the 4 lanes holds an attribute value, gathering that value's label counts one label at a time,
+ * so that a lane subtracts its squared label probabilities in the same order as the scalar kernel;
+ * lanes are then added up value by value, leaving the Gini index identical to the scalar one.
+ * Values left over from groups of 4 go through the scalar kernel.
+ * Kept apart in src-vector, as it compiles only with --add-modules jdk.incubator.vector.
+ */
+final class VectorGiniKernel implements GiniImpurity.GiniKernel {
+    private static final VectorSpecies<Double> DOUBLE_SPECIES = DoubleVector.SPECIES_256;
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_128; // As many lanes
+    private static final int LANES = 4;
+
+    /* Gather offsets of consecutive values' counts, {0, L, 2L, 3L}, by label dimension L */
+    private static final AtomicReferenceArray<int[]> INDEX_MAPS = new AtomicReferenceArray<>(256);
+
+    /**
+     * @return whether this machine's vectors hold 4 doubles; on narrower ones the scalar kernel is faster.
+     */
+    static boolean isSupported(){
+        return DoubleVector.SPECIES_PREFERRED.vectorBitSize() >= DOUBLE_SPECIES.vectorBitSize();
+    }
+
+    @Override
+    public double giniIndexOnAttr(final int[] avcSet, final int attrOptions, final int labelOptions, final int sampleWeight) {
+        double sampleSize = sampleWeight;
+        int[] indexMap = indexMapOf(labelOptions);
+
+        double giniIndex = 0;
+        int v = 0;
+        for(; v + LANES <= attrOptions; v += LANES){
+            int offset = v * labelOptions;
+
+            /* Weight of each value */
+            IntVector valueCounts = IntVector.fromArray(INT_SPECIES, avcSet, offset, indexMap, 0);
+            for(int j = 1; j < labelOptions; j++)
+                valueCounts = valueCounts.add(IntVector.fromArray(INT_SPECIES, avcSet, offset + j, indexMap, 0));
+            DoubleVector valueWeights = toDouble(valueCounts);
+            VectorMask<Double> isPopulated = valueWeights.compare(VectorOperators.GT, 0);
+
+            /* Gini index of each populated value, label by label */
+            DoubleVector valueGinis = DoubleVector.broadcast(DOUBLE_SPECIES, 1);
+            for(int j = 0; j < labelOptions; j++){
+                DoubleVector probabilities = toDouble(IntVector.fromArray(INT_SPECIES, avcSet, offset + j, indexMap, 0))
+                        .div(valueWeights);
+                valueGinis = valueGinis.sub(probabilities.mul(probabilities), isPopulated);
+            }
+
+            /* Weighted by the value's samples, added up in order of values; an empty value adds 0 */
+            DoubleVector weightedGinis = valueGinis.mul(valueWeights).div(sampleSize);
+            giniIndex += weightedGinis.lane(0);
+            giniIndex += weightedGinis.lane(1);
+            giniIndex += weightedGinis.lane(2);
+            giniIndex += weightedGinis.lane(3);
+        }
+
+        /* The values left over */
+        for(; v < attrOptions; v++){
+            int offset = v * labelOptions;
+            double valueWeight = 0;
+            for(int j = offset; j < offset + labelOptions; j++)
+                valueWeight += avcSet[j];
+            if(valueWeight > 0){
+                double valueGini = 1;
+                for(int j = offset; j < offset + labelOptions; j++){
+                    double probability = avcSet[j] / valueWeight;
+                    valueGini -= probability * probability;
+                }
+                giniIndex += valueGini * valueWeight / sampleSize;
+            }
+        }
+        return giniIndex;
+    }
+
+    private static DoubleVector toDouble(final IntVector vector){
+        return (DoubleVector) vector.convertShape(VectorOperators.I2D, DOUBLE_SPECIES, 0);
+    }
+
+    private static int[] indexMapOf(final int labelOptions){
+        int[] indexMap = labelOptions < INDEX_MAPS.length() ? INDEX_MAPS.get(labelOptions) : null;
+        if(indexMap == null){
+            indexMap = new int[LANES];
+            for(int lane = 0; lane < LANES; lane++)
+                indexMap[lane] = lane * labelOptions;
+            if(labelOptions < INDEX_MAPS.length())
+                INDEX_MAPS.set(labelOptions, indexMap);
+        }
+        return indexMap;
+    }
+}
@@ -0,0 +1,159 @@
+package classification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The AVC-sets (Attribute-Value, Class-label counts) of a node's samples, for any subset of attributes,
+ * along with the node's label totals.
+ *
+ * The AVC-set of attribute a is a flat int[attrOptions[a] * labelOptions],
+ * counting the samples of value v and label l at [v * labelOptions + l - 1].
+ * Samples may be weighted (e.g. drawn several times by a bootstrap, or standing for identical samples),
+ * counting that many times.
+ */
+public class AVCHistogram {
+    // Metadata
+    private final int _labelOptions;
+    private final int[] _attrOptions;
+
+    // Counts
+    private final int[] _labelCounts;
+    private final int _total;
+    private final int[][] _avcSets;
+
+    /**
+     * Constructor of a histogram with known label totals and no AVC-set counted yet.
+     */
+    public AVCHistogram(final int labelOptions, final int[] attrOptions, final int[] labelCounts){
+        this._labelOptions = labelOptions;
+        this._attrOptions = attrOptions;
+        this._labelCounts = labelCounts;
+        int total = 0;
+        for(int labelCount : labelCounts)
+            total += labelCount;
+        this._total = total;
+        this._avcSets = new int[attrOptions.length][];
+    }
+
+    /**
+     * Count the label totals of the samples within [sampleOffset, sampleOffset + sampleCount) of sampleIndexes.
+     * @param weights   Each sample's weight, or null if each counts once.
+     */
+    public static int[] countLabels(final Dataset data, final Column weights,
+                                    final int[] sampleIndexes, final int sampleOffset, final int sampleCount){
+        Column labelColumn = data.getLabelColumn();
+        int[] labelCounts = new int[data.getLabelOptions()];
+        for(int i = sampleOffset; i < sampleOffset + sampleCount; i++){
+            int sampleIndex = sampleIndexes[i];
+            labelCounts[labelColumn.get(sampleIndex) - 1] += weights == null ? 1 : weights.get(sampleIndex);
+        }
+        return labelCounts;
+    }
+
+    /**
+     * Count the AVC-sets of the given attributes that are not counted yet, in one sweep over the samples:
+     * labels are gathered once, then each attribute's column is read once.
+     * @param sampleWeights     Each sample's weight, or null if each counts once.
+     * @param attrs     Attributes to count.
+     * @param parallel  Whether to count attributes as parallel tasks; only valid within a ForkJoinPool.
+     */
+    public void countAttrs(final Dataset data, final Column sampleWeights,
+                           final int[] sampleIndexes, final int sampleOffset, final int sampleCount,
+                           final boolean[] attrs, final boolean parallel){
+        /* Gather the samples' label offsets and weights once for all attributes */
+        Column labelColumn = data.getLabelColumn();
+        final int[] labelOffsets = new int[sampleCount];
+        for(int i = 0; i < sampleCount; i++){
+            labelOffsets[i] = labelColumn.get(sampleIndexes[sampleOffset + i]) - 1;
+        }
+        final int[] weights = sampleWeights == null ? null : new int[sampleCount];
+        if(weights != null){
+            for(int i = 0; i < sampleCount; i++)
+                weights[i] = sampleWeights.get(sampleIndexes[sampleOffset + i]);
+        }
+
+        ArrayList<RecursiveAction> countTasks = new ArrayList<>();
+        for(int a = 0; a < _attrOptions.length; a++){
+            if(attrs[a] == false || _avcSets[a] != null)
+                continue;
+
+            final int attrIndex = a;
+            if(parallel == false) {
+                _avcSets[a] = countAttr(data.getAttrColumn(a), attrIndex, sampleIndexes, sampleOffset, sampleCount, labelOffsets, weights);
+            } else {
+                countTasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        _avcSets[attrIndex] = countAttr(data.getAttrColumn(attrIndex), attrIndex,
+                                sampleIndexes, sampleOffset, sampleCount, labelOffsets, weights);
+                    }
+                });
+            }
+        }
+        ForkJoinTask.invokeAll(countTasks);
+    }
+
+    private int[] countAttr(final Column attrColumn, final int attrIndex,
+                            final int[] sampleIndexes, final int sampleOffset, final int sampleCount,
+                            final int[] labelOffsets, final int[] weights){
+        int[] avcSet = new int[_attrOptions[attrIndex] * _labelOptions];
+        if(weights == null){
+            for(int i = 0; i < sampleCount; i++){
+                avcSet[attrColumn.get(sampleIndexes[sampleOffset + i]) * _labelOptions + labelOffsets[i]]++;
+            }
+        } else {
+            for(int i = 0; i < sampleCount; i++){
+                avcSet[attrColumn.get(sampleIndexes[sampleOffset + i]) * _labelOptions + labelOffsets[i]] += weights[i];
+            }
+        }
+        return avcSet;
+    }
+
+    /**
+     * Derive this histogram's AVC-sets of the given attributes as the parent's minus all its siblings'.
+     * @param siblings  Histograms of every child of the parent, where this one is skipped.
+     */
+    public void subtract(final AVCHistogram parent, final AVCHistogram[] siblings, final boolean[] attrs){
+        for(int a = 0; a < _attrOptions.length; a++){
+            if(attrs[a] == false)
+                continue;
+
+            int[] avcSet = parent._avcSets[a].clone();
+            for(AVCHistogram sibling : siblings){
+                if(sibling == this)
+                    continue;
+                int[] siblingAVCSet = sibling._avcSets[a];
+                for(int i = 0; i < avcSet.length; i++)
+                    avcSet[i] -= siblingAVCSet[i];
+            }
+            _avcSets[a] = avcSet;
+        }
+    }
+
+    /**
+     * @return the label totals of the samples taking the given value on the given attribute,
+     *         i.e. that attribute's AVC-set row.
+     */
+    public int[] getChildLabelCounts(final int attrIndex, final int attrValue){
+        return Arrays.copyOfRange(_avcSets[attrIndex], attrValue * _labelOptions, (attrValue + 1) * _labelOptions);
+    }
+
+    /**
+     * Getters
+     */
+    public int[] getLabelCounts() {
+        return _labelCounts;
+    }
+    /**
+     * @return the number of samples, counting each with its weight.
+     */
+    public int getTotal() {
+        return _total;
+    }
+    public int[] getAVCSet(final int attrIndex) {
+        return _avcSets[attrIndex];
+    }
+}
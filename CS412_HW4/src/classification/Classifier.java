@@ -1,267 +1,266 @@
-package classification;
-
-import java.io.*;
-import java.util.ArrayList;
-
-/**
- * Created by nacos on 11/16/2016.
- */
-public class Classifier {
-    // Configuration
-    protected String _trainFilename;
-    protected String _testFilename;
-
-    // Meta-data
-    protected int _labelOptions;
-    protected int _attrCount;
-    protected int[] _attrOptions;
-
-    // Train Data
-    protected int _trainSampleSize;
-    protected ArrayList<Integer> _trainLabels;
-    protected ArrayList<int[]> _trainAttrs;
-
-    // Test Data
-    protected int _testSampleSize;
-    protected ArrayList<Integer> _testLabels;
-    protected ArrayList<int[]> _testAttrs;
-
-    // Evaluation
-    protected int[][] _confusionMatrix;
-
-    /**
-     * Constructor
-     */
-    protected Classifier(final String trainFileName, final String testFileName){
-        this._trainFilename = trainFileName;
-        this._testFilename = testFileName;
-    }
-
-    /**
-     * Step 1: Data I/O and Data Format.
-     * Read training and test data from file.
-     */
-    protected int readDataFromFiles() throws Exception{
-        readTrainData();
-        readTestData();
-        return 0;
-    }
-    /**
-     * Step 1: Data I/O and Data Format.
-     * Read training data from file.
-     */
-    protected int readTrainData() throws Exception{
-        /* Use a reader for train-file input */
-        File trainFile = new File(_trainFilename);
-        if(trainFile.exists() == false || trainFile.isFile() == false)
-            throw new FileNotFoundException("Train file not found!");
-
-        BufferedReader bufferedReader = new BufferedReader(
-                new InputStreamReader(
-                        new FileInputStream(trainFile)
-                )
-        );
-
-
-        /* Iterate whole data set the first time to grasp the data's dimension of label and attr */
-        _labelOptions = 0;
-        _attrCount = 0;
-
-        ArrayList<String> trainDataLines = new ArrayList<>();
-        String line;
-        while((line = bufferedReader.readLine()) != null){
-            if(line.length() == 0)
-                continue;
-
-            String words[] = line.split(" ");
-
-            // Label type
-            int label = Integer.parseInt(words[0]);
-            if(label > _labelOptions)
-                _labelOptions = label;
-
-            // Attribute count
-            int maxAttr = Integer.parseInt(words[words.length-1].split(":")[0]);
-            if(maxAttr > _attrCount)
-                _attrCount = maxAttr;
-
-            trainDataLines.add(line);
-        }
-        _trainSampleSize = trainDataLines.size();
-
-        /* Prepare data to store samples */
-        if(_labelOptions < 2 || _attrCount < 1)
-            throw new Exception("Train data seems to be corrupted!");
-
-        // Metadata
-        _attrOptions = new int[_attrCount];
-        // Data
-        _trainLabels = new ArrayList<>(_trainSampleSize);
-        _trainAttrs = new ArrayList<>(_trainSampleSize);
-
-        /* Iterate whole data set the second time to save data into array and specify each attr's options */
-        for (int i = 0; i < _trainSampleSize; i++) {
-            String words[] = trainDataLines.get(i).split(" ");
-
-            // Label
-            _trainLabels.add(Integer.parseInt(words[0]));
-
-            // Attributes
-            int[] thisSampleAttrs = new int[_attrCount];
-            for(int j = 1; j < words.length; j++){
-                String[] pair = words[j].split(":");
-                if(pair.length != 2)
-                    throw new Exception("Data corruption!");
-
-                int attrIndex = Integer.parseInt(pair[0]);
-                int attrValue = Integer.parseInt(pair[1]);
-                thisSampleAttrs[attrIndex-1] = attrValue;
-
-                if(attrValue > _attrOptions[attrIndex-1])
-                    _attrOptions[attrIndex-1] = attrValue;
-            }
-            _trainAttrs.add(thisSampleAttrs);
-        }
-
-        for(int i = 0; i < _attrCount; i++){
-            _attrOptions[i]++;
-        }
-
-        bufferedReader.close();
-        return 0;
-    }
-
-    /**
-     * Step 1: Data I/O and Data Format.
-     * Read test data from file.
-     */
-    protected int readTestData() throws Exception{
-        /* Use a reader for train-file input */
-        File testFile = new File(_testFilename);
-        if(testFile.exists() == false || testFile.isFile() == false)
-            throw new FileNotFoundException("Test file not found!");
-
-        BufferedReader bufferedReader = new BufferedReader(
-                new InputStreamReader(
-                        new FileInputStream(testFile)
-                )
-        );
-
-        /* Iterate whole data set the first time to grasp the data's dimension of label and attr */
-        int labelOptions = 0;
-        int attrCount = 0;
-
-        ArrayList<String> testDataLines = new ArrayList<>();
-        String line;
-        while((line = bufferedReader.readLine()) != null){
-            if(line.length() == 0)
-                continue;
-
-            String words[] = line.split(" ");
-
-            // Label type
-            int label = Integer.parseInt(words[0]);
-            if(label > labelOptions)
-                labelOptions = label;
-
-            // Attribute count
-            int maxAttr = Integer.parseInt(words[words.length-1].split(":")[0]);
-            if(maxAttr > attrCount)
-                attrCount = maxAttr;
-
-            testDataLines.add(line);
-        }
-        _testSampleSize = testDataLines.size();
-
-        /* Prepare data to store samples */
-        if(labelOptions < 2 || attrCount < 1)
-            throw new Exception("Test data's dimension is too small!");
-        if(labelOptions > _labelOptions || attrCount > _attrCount)
-            throw new Exception("Test data has larger dimension than train data!");
-
-        // Metadata
-        int[] attrOptions = new int[_attrCount];
-        // Data
-        _testLabels = new ArrayList<>(_testSampleSize);
-        _testAttrs = new ArrayList<>(_testSampleSize);
-
-        /* Iterate whole data set the second time to save data into array and specify each attr's options */
-        for (int i = 0; i < _testSampleSize; i++) {
-            String words[] = testDataLines.get(i).split(" ");
-
-            // Label
-            _testLabels.add(Integer.parseInt(words[0]));
-
-            // Attributes
-            int[] thisSampleAttrs = new int[_attrCount];
-            for(int j = 1; j < words.length; j++){
-                String[] pair = words[j].split(":");
-                if(pair.length != 2)
-                    throw new Exception("Data corruption!");
-
-                int attrIndex = Integer.parseInt(pair[0]);
-                int attrValue = Integer.parseInt(pair[1]);
-                thisSampleAttrs[attrIndex-1] = attrValue;
-
-                if(attrValue > attrOptions[attrIndex-1])
-                    attrOptions[attrIndex-1] = attrValue;
-            }
-            _testAttrs.add(thisSampleAttrs);
-        }
-
-        for(int i = 0; i < _attrCount; i++){
-            attrOptions[i]++;
-        }
-
-        bufferedReader.close();
-        return 0;
-    }
-
-    /**
-     * Step 2:Implement Basic Classification Method.
-     * Train a decision tree from training data.
-     */
-    protected int train() throws Exception{
-        throw new Exception("To be implement!");
-    }
-
-    /**
-     * Step 2:Implement Basic Classification Method.
-     * Use the trained decision tree to predict a sample's label
-     */
-    protected int predictSample(final int[] sampleAttr) throws Exception{
-        throw new Exception("To be implement!");
-    }
-
-    /**
-     * Generate confusion matrix on the test data.
-     */
-    public int evaluateQuality() throws Exception{
-        _confusionMatrix = new int[_labelOptions][_labelOptions];
-
-        for(int i = 0; i < _testSampleSize; i++){
-            /* Compare predicted label to actual actual */
-            int predictedLabel = predictSample(_testAttrs.get(i));
-            int actualLabel = _testLabels.get(i);
-            _confusionMatrix[actualLabel - 1][predictedLabel - 1]++;
-        }
-
-        return 0;
-    }
-
-    /**
-     * Getters
-     */
-    protected int getLabelOptions() {
-        return _labelOptions;
-    }
-    protected int getAttrCount() {
-        return _attrCount;
-    }
-    protected int[] getAttrOptions() {
-        return _attrOptions;
-    }
-    protected int[][] getConfusionMatrix() {
-        return _confusionMatrix;
-    }
-}
+package classification;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Created by nacos on 11/16/2016.
+ */
+public class Classifier {
+    /* Number of samples predicted together by evaluateQuality() */
+    protected static final int BATCH_SIZE = 1024;
+
+    // Configuration
+    protected String _trainFilename;
+    protected String _testFilename;
+    protected boolean _useDatasetCache = true;
+    protected boolean _collapseDuplicates = false;
+    protected ExecutorService _executor = ForkJoinPool.commonPool();
+
+    // Meta-data
+    protected int _labelOptions;
+    protected int _attrCount;
+    protected int[] _attrOptions;
+
+    // Train Data
+    protected int _trainSampleSize;
+    protected Dataset _trainData;
+
+    // Test Data
+    protected int _testSampleSize;
+    protected Dataset _testData;
+
+    // Evaluation
+    protected int[][] _confusionMatrix;
+
+    /**
+     * Constructor
+     */
+    protected Classifier(final String trainFileName, final String testFileName){
+        this._trainFilename = trainFileName;
+        this._testFilename = testFileName;
+    }
+
+    /**
+     * Step 1: Data I/O and Data Format.
+     * Read training and test data from file, parsing both at the same time.
+     */
+    protected int readDataFromFiles() throws Exception{
+        DatasetLoader trainLoader = startLoading(_trainFilename, "Train file not found!");
+        DatasetLoader testLoader = startLoading(_testFilename, "Test file not found!");
+
+        setTrainData(trainLoader.finish());
+        setTestData(testLoader.finish());
+        return 0;
+    }
+    /**
+     * Step 1: Data I/O and Data Format.
+     * Read training data from file.
+     */
+    protected int readTrainData() throws Exception{
+        return setTrainData(startLoading(_trainFilename, "Train file not found!").finish());
+    }
+
+    /**
+     * Step 1: Data I/O and Data Format.
+     * Read test data from file.
+     */
+    protected int readTestData() throws Exception{
+        return setTestData(startLoading(_testFilename, "Test file not found!").finish());
+    }
+
+    /**
+     * Start loading a data file on the executor.
+     */
+    private DatasetLoader startLoading(final String fileName, final String notFoundMessage) throws IOException{
+        File file = new File(fileName);
+        if(file.exists() == false || file.isFile() == false)
+            throw new FileNotFoundException(notFoundMessage);
+
+        return DatasetLoader.start(file, _useDatasetCache, _executor, getParallelism());
+    }
+
+    /**
+     * Adopt a dataset as training data, taking its dimension as the metadata.
+     * Identical samples are collapsed into weighted ones if so configured.
+     */
+    private int setTrainData(final Dataset trainData) throws Exception{
+        _trainData = _collapseDuplicates ? DatasetCollapser.collapse(trainData) : trainData;
+        _labelOptions = _trainData.getLabelOptions();
+        _attrCount = _trainData.getAttrCount();
+        _attrOptions = _trainData.getAttrOptions();
+        _trainSampleSize = _trainData.getSampleSize();
+
+        if(_labelOptions < 2 || _attrCount < 1)
+            throw new Exception("Train data seems to be corrupted!");
+        return 0;
+    }
+
+    /**
+     * Adopt a dataset as test data, checking its dimension against the training data's.
+     */
+    private int setTestData(final Dataset testData) throws Exception{
+        int labelOptions = testData.getLabelOptions();
+        int attrCount = testData.getAttrCount();
+        _testSampleSize = testData.getSampleSize();
+
+        if(labelOptions < 2 || attrCount < 1)
+            throw new Exception("Test data's dimension is too small!");
+        if(labelOptions > _labelOptions || attrCount > _attrCount)
+            throw new Exception("Test data has larger dimension than train data!");
+
+        /* View test samples in the train data's dimension */
+        _testData = testData.expandTo(_labelOptions, _attrCount);
+        return 0;
+    }
+
+    /**
+     * Adopt the metadata of a loaded model in place of the training data's, dropping any training data.
+     */
+    protected void setModelMetadata(final int labelOptions, final int attrCount, final int[] attrOptions){
+        _labelOptions = labelOptions;
+        _attrCount = attrCount;
+        _attrOptions = attrOptions;
+        _trainData = null;
+        _trainSampleSize = 0;
+    }
+
+    /**
+     * Step 2:Implement Basic Classification Method.
+     * Train a decision tree from training data.
+     */
+    protected int train() throws Exception{
+        throw new Exception("To be implement!");
+    }
+
+    /**
+     * Step 2:Implement Basic Classification Method.
+     * Use the trained decision tree to predict a sample's label
+     */
+    protected int predictSample(final int[] sampleAttr) throws Exception{
+        throw new Exception("To be implement!");
+    }
+
+    /**
+     * Predict the labels of a block of samples.
+     * Predicts sample by sample unless overridden.
+     * @param samples   Samples of which [sampleOffset, sampleOffset + sampleCount) are predicted.
+     * @param votes     Reusable scratch of at least sampleCount * labelOptions ints, for ensembles to count votes in.
+     * @param predictedLabels   Output of at least sampleCount labels.
+     */
+    protected void predictBatch(final Dataset samples, final int sampleOffset, final int sampleCount,
+                                final int[] votes, final int[] predictedLabels) throws Exception{
+        int[] sampleAttr = new int[_attrCount];
+        for(int i = 0; i < sampleCount; i++){
+            predictedLabels[i] = predictSample(samples.getSample(sampleOffset + i, sampleAttr));
+        }
+    }
+
+    /**
+     * Generate confusion matrix on the test data, predicting it block by block.
+     * Ranges of blocks are evaluated in parallel on the executor, each into its own confusion matrix,
+     * then the matrices are summed up.
+     */
+    public int evaluateQuality() throws Exception{
+        int blockCount = (_testSampleSize + BATCH_SIZE - 1) / BATCH_SIZE;
+        int taskCount = Math.max(1, Math.min(getParallelism(), blockCount));
+
+        /* Evaluate each range of blocks */
+        ArrayList<Future<int[][]>> evaluations = new ArrayList<>(taskCount);
+        for(int t = 0; t < taskCount; t++){
+            final int sampleFrom = Math.min(_testSampleSize, (int) ((long) blockCount * t / taskCount) * BATCH_SIZE);
+            final int sampleTo = Math.min(_testSampleSize, (int) ((long) blockCount * (t + 1) / taskCount) * BATCH_SIZE);
+            evaluations.add(_executor.submit(new Callable<int[][]>() {
+                @Override
+                public int[][] call() throws Exception {
+                    return evaluateRange(sampleFrom, sampleTo);
+                }
+            }));
+        }
+
+        /* Merge the confusion matrices */
+        _confusionMatrix = new int[_labelOptions][_labelOptions];
+        try {
+            for(Future<int[][]> evaluation : evaluations){
+                int[][] confusionMatrix = evaluation.get();
+                for(int i = 0; i < _labelOptions; i++)
+                    for(int j = 0; j < _labelOptions; j++)
+                        _confusionMatrix[i][j] += confusionMatrix[i][j];
+            }
+        } catch (ExecutionException e) {
+            for(Future<int[][]> evaluation : evaluations)
+                evaluation.cancel(true);
+            throw new Exception("Failed to evaluate test data!", e.getCause());
+        }
+
+        return 0;
+    }
+
+    /**
+     * Generate the confusion matrix of the test samples within [sampleFrom, sampleTo).
+     */
+    private int[][] evaluateRange(final int sampleFrom, final int sampleTo) throws Exception{
+        int[][] confusionMatrix = new int[_labelOptions][_labelOptions];
+
+        int[] votes = new int[BATCH_SIZE * _labelOptions];
+        int[] predictedLabels = new int[BATCH_SIZE];
+        for(int offset = sampleFrom; offset < sampleTo; offset += BATCH_SIZE){
+            int count = Math.min(BATCH_SIZE, sampleTo - offset);
+            predictBatch(_testData, offset, count, votes, predictedLabels);
+
+            /* Compare predicted label to actual actual */
+            for(int i = 0; i < count; i++){
+                int actualLabel = _testData.getLabel(offset + i);
+                confusionMatrix[actualLabel - 1][predictedLabels[i] - 1]++;
+            }
+        }
+        return confusionMatrix;
+    }
+
+    /**
+     * Setters
+     */
+    public void setDatasetCache(final boolean useDatasetCache) {
+        this._useDatasetCache = useDatasetCache;
+    }
+    /**
+     * @param collapseDuplicates    Whether identical training samples are collapsed into one weighted sample on loading,
+     *                              so that training scales with distinct samples; trees grow the same either way.
+     */
+    public void setCollapseDuplicates(final boolean collapseDuplicates) {
+        this._collapseDuplicates = collapseDuplicates;
+    }
+    public void setExecutor(final ExecutorService executor) {
+        this._executor = executor;
+    }
+
+    /**
+     * Number of tasks worth running at the same time on the executor.
+     */
+    protected int getParallelism() {
+        if(_executor instanceof ForkJoinPool)
+            return Math.max(1, ((ForkJoinPool) _executor).getParallelism());
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Getters
+     */
+    protected int getLabelOptions() {
+        return _labelOptions;
+    }
+    protected int getAttrCount() {
+        return _attrCount;
+    }
+    protected int[] getAttrOptions() {
+        return _attrOptions;
+    }
+    protected int[][] getConfusionMatrix() {
+        return _confusionMatrix;
+    }
+}
@@ -0,0 +1,210 @@
+package classification;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A primitive column of non-negative values (one attribute, or the labels) of a dataset.
+ * The backing array is packed into the narrowest integer type that fits the column's domain.
+ */
+public abstract class Column {
+    protected final int _size;
+
+    protected Column(final int size){
+        this._size = size;
+    }
+
+    /**
+     * Allocate a column able to hold values in [0, options).
+     * @param options   Number of distinct values, i.e. the column's maximum value plus one.
+     * @param size      Number of samples.
+     */
+    public static Column allocate(final int options, final int size){
+        if(options <= 1 << 8)
+            return new ByteColumn(size);
+        if(options <= 1 << 16)
+            return new ShortColumn(size);
+        return new IntColumn(size);
+    }
+
+    public abstract int get(final int index);
+
+    public abstract void set(final int index, final int value);
+
+    /**
+     * Number of distinct values this column's backing type can hold.
+     */
+    public abstract int maxOptions();
+
+    /**
+     * Number of bytes per value of the backing type.
+     */
+    public abstract int width();
+
+    /**
+     * Bulk-copy this column's values into a buffer, advancing its position.
+     */
+    public abstract void writeTo(final ByteBuffer buffer);
+
+    /**
+     * Bulk-copy size() values from a buffer into this column, advancing its position.
+     */
+    public abstract void readFrom(final ByteBuffer buffer);
+
+    /**
+     * Allocate a column of the backing type of the given width.
+     */
+    public static Column allocateWidth(final int width, final int size){
+        switch(width){
+            case 1: return new ByteColumn(size);
+            case 2: return new ShortColumn(size);
+            case 4: return new IntColumn(size);
+            default: throw new IllegalArgumentException("Column width must be 1, 2 or 4!");
+        }
+    }
+
+    public int size(){
+        return _size;
+    }
+
+    /**
+     * Copy this column into a new one of the given size, widened if needed to hold values in [0, options).
+     * Values past this column's size are zero.
+     */
+    public Column copyOf(final int options, final int size){
+        Column column = allocate(Math.max(options, maxOptions()), size);
+        int copySize = Math.min(size, _size);
+        for(int i = 0; i < copySize; i++)
+            column.set(i, get(i));
+        return column;
+    }
+
+    /*
+     * Values in [0, 256), stored as unsigned bytes.
+     */
+    public static final class ByteColumn extends Column {
+        private final byte[] _values;
+
+        private ByteColumn(final int size){
+            super(size);
+            this._values = new byte[size];
+        }
+
+        @Override
+        public int get(final int index){
+            return _values[index] & 0xFF;
+        }
+
+        @Override
+        public void set(final int index, final int value){
+            _values[index] = (byte) value;
+        }
+
+        @Override
+        public int maxOptions(){
+            return 1 << 8;
+        }
+
+        @Override
+        public int width(){
+            return 1;
+        }
+
+        @Override
+        public void writeTo(final ByteBuffer buffer){
+            buffer.put(_values);
+        }
+
+        @Override
+        public void readFrom(final ByteBuffer buffer){
+            buffer.get(_values);
+        }
+    }
+
+    /*
+     * Values in [0, 65536), stored as unsigned shorts.
+     */
+    public static final class ShortColumn extends Column {
+        private final short[] _values;
+
+        private ShortColumn(final int size){
+            super(size);
+            this._values = new short[size];
+        }
+
+        @Override
+        public int get(final int index){
+            return _values[index] & 0xFFFF;
+        }
+
+        @Override
+        public void set(final int index, final int value){
+            _values[index] = (short) value;
+        }
+
+        @Override
+        public int maxOptions(){
+            return 1 << 16;
+        }
+
+        @Override
+        public int width(){
+            return 2;
+        }
+
+        @Override
+        public void writeTo(final ByteBuffer buffer){
+            buffer.asShortBuffer().put(_values);
+            buffer.position(buffer.position() + _size * 2);
+        }
+
+        @Override
+        public void readFrom(final ByteBuffer buffer){
+            buffer.asShortBuffer().get(_values);
+            buffer.position(buffer.position() + _size * 2);
+        }
+    }
+
+    /*
+     * Values of any non-negative int.
+     */
+    public static final class IntColumn extends Column {
+        private final int[] _values;
+
+        private IntColumn(final int size){
+            super(size);
+            this._values = new int[size];
+        }
+
+        @Override
+        public int get(final int index){
+            return _values[index];
+        }
+
+        @Override
+        public void set(final int index, final int value){
+            _values[index] = value;
+        }
+
+        @Override
+        public int maxOptions(){
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int width(){
+            return 4;
+        }
+
+        @Override
+        public void writeTo(final ByteBuffer buffer){
+            buffer.asIntBuffer().put(_values);
+            buffer.position(buffer.position() + _size * 4);
+        }
+
+        @Override
+        public void readFrom(final ByteBuffer buffer){
+            buffer.asIntBuffer().get(_values);
+            buffer.position(buffer.position() + _size * 4);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package classification;
+
+/**
+ * A column-oriented set of labelled samples.
+ * Labels and each attribute live in their own primitive Column, so a scan over one attribute is sequential in memory.
+ */
+public class Dataset {
+    // Metadata
+    private final int _labelOptions;
+    private final int _attrCount;
+    private final int[] _attrOptions;
+
+    // Data
+    private final int _sampleSize;
+    private final Column _labels;
+    private final Column[] _attrs;
+    private final Column _weights;  // Number of identical samples each sample stands for, or null if each is one
+
+    /**
+     * Constructor
+     * @param labelOptions  Labels range in [1, labelOptions].
+     * @param attrCount     Number of attributes of each sample.
+     * @param attrOptions   Attribute i ranges in [0, attrOptions[i]).
+     * @param sampleSize    Number of samples.
+     */
+    public Dataset(final int labelOptions, final int attrCount, final int[] attrOptions, final int sampleSize){
+        this._labelOptions = labelOptions;
+        this._attrCount = attrCount;
+        this._attrOptions = attrOptions;
+
+        this._sampleSize = sampleSize;
+        this._labels = Column.allocate(labelOptions + 1, sampleSize);
+        this._attrs = new Column[attrCount];
+        for(int i = 0; i < attrCount; i++)
+            _attrs[i] = Column.allocate(attrOptions[i], sampleSize);
+        this._weights = null;
+    }
+
+    /**
+     * Constructor wrapping already filled columns.
+     */
+    public Dataset(final int labelOptions, final int attrCount, final int[] attrOptions, final int sampleSize,
+                   final Column labels, final Column[] attrs){
+        this(labelOptions, attrCount, attrOptions, sampleSize, labels, attrs, null);
+    }
+
+    /**
+     * Constructor wrapping already filled columns of weighted samples, e.g. identical samples collapsed into one.
+     * @param weights   Positive number of samples each sample stands for, or null if each is one.
+     */
+    public Dataset(final int labelOptions, final int attrCount, final int[] attrOptions, final int sampleSize,
+                   final Column labels, final Column[] attrs, final Column weights){
+        this._labelOptions = labelOptions;
+        this._attrCount = attrCount;
+        this._attrOptions = attrOptions;
+
+        this._sampleSize = sampleSize;
+        this._labels = labels;
+        this._attrs = attrs;
+        this._weights = weights;
+    }
+
+    /**
+     * View this dataset in a larger dimension, e.g. test data in the train data's dimension.
+     * Columns and weights are shared; attributes added are constantly 0.
+     */
+    public Dataset expandTo(final int labelOptions, final int attrCount){
+        if(labelOptions == _labelOptions && attrCount == _attrCount)
+            return this;
+
+        int[] attrOptions = new int[attrCount];
+        Column[] attrs = new Column[attrCount];
+        for(int i = 0; i < attrCount; i++){
+            if(i < _attrCount){
+                attrOptions[i] = _attrOptions[i];
+                attrs[i] = _attrs[i];
+            } else {
+                attrOptions[i] = 1;
+                attrs[i] = Column.allocate(1, _sampleSize);
+            }
+        }
+        Column labels = _labels;
+        if(labelOptions >= labels.maxOptions())
+            labels = labels.copyOf(labelOptions + 1, _sampleSize);
+        return new Dataset(labelOptions, attrCount, attrOptions, _sampleSize, labels, attrs, _weights);
+    }
+
+    /**
+     * Store a sample at the given index.
+     */
+    public void setSample(final int sampleIndex, final int label, final int[] sampleAttr){
+        _labels.set(sampleIndex, label);
+        for(int i = 0; i < _attrCount; i++)
+            _attrs[i].set(sampleIndex, sampleAttr[i]);
+    }
+
+    /**
+     * Gather a sample's attributes into a row buffer.
+     * @param buffer    Row of at least attrCount ints, reused across calls.
+     */
+    public int[] getSample(final int sampleIndex, final int[] buffer){
+        for(int i = 0; i < _attrCount; i++)
+            buffer[i] = _attrs[i].get(sampleIndex);
+        return buffer;
+    }
+
+    public int getLabel(final int sampleIndex){
+        return _labels.get(sampleIndex);
+    }
+
+    public int getAttr(final int sampleIndex, final int attrIndex){
+        return _attrs[attrIndex].get(sampleIndex);
+    }
+
+    public int getWeight(final int sampleIndex){
+        return _weights == null ? 1 : _weights.get(sampleIndex);
+    }
+
+    /**
+     * Getters
+     */
+    public int getLabelOptions() {
+        return _labelOptions;
+    }
+    public int getAttrCount() {
+        return _attrCount;
+    }
+    public int[] getAttrOptions() {
+        return _attrOptions;
+    }
+    public int getSampleSize() {
+        return _sampleSize;
+    }
+    public Column getLabelColumn() {
+        return _labels;
+    }
+    public Column getAttrColumn(final int attrIndex) {
+        return _attrs[attrIndex];
+    }
+    /**
+     * @return the number of samples each sample stands for, or null if each is one.
+     */
+    public Column getWeights() {
+        return _weights;
+    }
+    /**
+     * @return the number of samples, counting each with its weight.
+     */
+    public long getTotalWeight() {
+        if(_weights == null)
+            return _sampleSize;
+        long totalWeight = 0;
+        for(int i = 0; i < _sampleSize; i++)
+            totalWeight += _weights.get(i);
+        return totalWeight;
+    }
+}
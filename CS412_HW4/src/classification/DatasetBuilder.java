@@ -0,0 +1,161 @@
+package classification;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Accumulates samples into growable primitive columns, tracking the data's dimension on the fly.
+ * A column starts as bytes and is widened only when a value no longer fits.
+ */
+public class DatasetBuilder {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Dimension seen so far
+    private int _labelOptions;
+    private int _attrCount;
+    private int[] _maxAttrValues;
+
+    // Data
+    private int _sampleSize;
+    private int _capacity;
+    private Column _labels;
+    private Column[] _attrs;
+
+    /**
+     * Constructor
+     */
+    public DatasetBuilder(){
+        this._labelOptions = 0;
+        this._attrCount = 0;
+        this._maxAttrValues = new int[0];
+
+        this._sampleSize = 0;
+        this._capacity = INITIAL_CAPACITY;
+        this._labels = Column.allocate(1, _capacity);
+        this._attrs = new Column[0];
+    }
+
+    /**
+     * Append a sample.
+     * @param sampleAttr    Attribute values, of which the first rowAttrCount are read.
+     */
+    public void add(final int label, final int[] sampleAttr, final int rowAttrCount){
+        /* Grow rows and columns if needed */
+        if(_sampleSize == _capacity){
+            _capacity *= 2;
+            _labels = _labels.copyOf(1, _capacity);
+            for(int i = 0; i < _attrCount; i++)
+                _attrs[i] = _attrs[i].copyOf(1, _capacity);
+        }
+        if(rowAttrCount > _attrCount){
+            _attrs = Arrays.copyOf(_attrs, rowAttrCount);
+            _maxAttrValues = Arrays.copyOf(_maxAttrValues, rowAttrCount);
+            for(int i = _attrCount; i < rowAttrCount; i++)
+                _attrs[i] = Column.allocate(1, _capacity);
+            _attrCount = rowAttrCount;
+        }
+
+        /* Label */
+        if(label > _labelOptions){
+            _labelOptions = label;
+            if(label >= _labels.maxOptions())
+                _labels = _labels.copyOf(label + 1, _capacity);
+        }
+        _labels.set(_sampleSize, label);
+
+        /* Attributes; absent ones stay 0 in the freshly allocated columns */
+        for(int i = 0; i < rowAttrCount; i++){
+            int attrValue = sampleAttr[i];
+            if(attrValue > _maxAttrValues[i]){
+                _maxAttrValues[i] = attrValue;
+                if(attrValue >= _attrs[i].maxOptions())
+                    _attrs[i] = _attrs[i].copyOf(attrValue + 1, _capacity);
+            }
+            _attrs[i].set(_sampleSize, attrValue);
+        }
+
+        _sampleSize++;
+    }
+
+    /**
+     * Pack the accumulated samples into a Dataset.
+     * @param labelOptions  Label dimension of the resulting dataset, at least getLabelOptions().
+     * @param attrCount     Attribute count of the resulting dataset, at least getAttrCount().
+     */
+    public Dataset build(final int labelOptions, final int attrCount){
+        int[] attrOptions = getAttrOptions(attrCount);
+
+        Column labels = _labels.copyOf(labelOptions + 1, _sampleSize);
+        Column[] attrs = new Column[attrCount];
+        for(int i = 0; i < attrCount; i++){
+            if(i < _attrCount)
+                attrs[i] = _attrs[i].copyOf(attrOptions[i], _sampleSize);
+            else
+                attrs[i] = Column.allocate(1, _sampleSize);
+        }
+        return new Dataset(labelOptions, attrCount, attrOptions, _sampleSize, labels, attrs);
+    }
+
+    /**
+     * Concatenate the samples of several builders, in order, into one Dataset of their merged dimension.
+     */
+    public static Dataset concat(final List<DatasetBuilder> datasetBuilders){
+        /* Merge each builder's maximums */
+        int labelOptions = 0;
+        int attrCount = 0;
+        int sampleSize = 0;
+        for(DatasetBuilder datasetBuilder : datasetBuilders){
+            labelOptions = Math.max(labelOptions, datasetBuilder._labelOptions);
+            attrCount = Math.max(attrCount, datasetBuilder._attrCount);
+            sampleSize += datasetBuilder._sampleSize;
+        }
+        int[] attrOptions = new int[attrCount];
+        Arrays.fill(attrOptions, 1);
+        for(DatasetBuilder datasetBuilder : datasetBuilders){
+            for(int i = 0; i < datasetBuilder._attrCount; i++)
+                attrOptions[i] = Math.max(attrOptions[i], datasetBuilder._maxAttrValues[i] + 1);
+        }
+
+        /* Copy each builder's columns at its offset */
+        Column labels = Column.allocate(labelOptions + 1, sampleSize);
+        Column[] attrs = new Column[attrCount];
+        for(int i = 0; i < attrCount; i++)
+            attrs[i] = Column.allocate(attrOptions[i], sampleSize);
+
+        int offset = 0;
+        for(DatasetBuilder datasetBuilder : datasetBuilders){
+            int size = datasetBuilder._sampleSize;
+            for(int j = 0; j < size; j++)
+                labels.set(offset + j, datasetBuilder._labels.get(j));
+            for(int i = 0; i < datasetBuilder._attrCount; i++){
+                Column column = datasetBuilder._attrs[i];
+                for(int j = 0; j < size; j++)
+                    attrs[i].set(offset + j, column.get(j));
+            }
+            offset += size;
+        }
+        return new Dataset(labelOptions, attrCount, attrOptions, sampleSize, labels, attrs);
+    }
+
+    /**
+     * Getters
+     */
+    public int getLabelOptions() {
+        return _labelOptions;
+    }
+    public int getAttrCount() {
+        return _attrCount;
+    }
+    public int getSampleSize() {
+        return _sampleSize;
+    }
+    /**
+     * @return each attribute's option count (max value plus one), padded to attrCount attributes.
+     */
+    public int[] getAttrOptions(final int attrCount) {
+        int[] attrOptions = new int[attrCount];
+        for(int i = 0; i < attrCount; i++)
+            attrOptions[i] = (i < _attrCount ? _maxAttrValues[i] : 0) + 1;
+        return attrOptions;
+    }
+}
@@ -0,0 +1,153 @@
+package classification;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Binary cache (.dtbin) of a parsed data file, stored next to it.
+ *
+ * Layout, big-endian:
+ *   int magic, int version, long source size, long source mtime,
+ *   int labelOptions, int attrCount, int sampleSize, int[attrCount] attrOptions,
+ *   then the label column and each attribute column as (byte width, width * sampleSize bytes).
+ * The cache is stale as soon as the source file's size or mtime differ from the recorded ones,
+ * and corrupted as soon as a count does not fit the bytes that follow it or a value its options; either way it is not used.
+ *
+ * Loading copies each column in bulk from the cache onto the heap and checks its values, without any text parsing;
+ * the dataset does not stay backed by the cache file.
+ */
+public class DatasetCache {
+    public static final String EXTENSION = ".dtbin";
+
+    private static final int MAGIC = 0x4454424E; // "DTBN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+    private DatasetCache(){
+    }
+
+    public static File cacheFileOf(final File sourceFile){
+        return new File(sourceFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Load the cached dataset of a source file, copying its columns out of the cache.
+     * @return the dataset, or null if there is no up-to-date cache.
+     */
+    public static Dataset load(final File sourceFile) throws IOException{
+        File cacheFile = cacheFileOf(sourceFile);
+        if(cacheFile.isFile() == false || cacheFile.length() < HEADER_SIZE)
+            return null;
+
+        try(RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+            FileChannel channel = file.getChannel()){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            /* Header */
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+            if(buffer.getLong() != sourceFile.length() || buffer.getLong() != sourceFile.lastModified())
+                return null;
+
+            // Check every count against the bytes left before sizing an array on it
+            int labelOptions = buffer.getInt();
+            int attrCount = buffer.getInt();
+            int sampleSize = buffer.getInt();
+            if(labelOptions < 0 || attrCount < 0 || sampleSize < 0 || 4L * attrCount > buffer.remaining())
+                throw new IOException("Dataset cache corrupted!");
+            int[] attrOptions = new int[attrCount];
+            for(int i = 0; i < attrCount; i++){
+                attrOptions[i] = buffer.getInt();
+                if(attrOptions[i] < 0)
+                    throw new IOException("Dataset cache corrupted!");
+            }
+
+            /* Columns */
+            Column labels = readColumn(buffer, sampleSize, labelOptions + 1); // Labels are in [0, labelOptions]
+            Column[] attrs = new Column[attrCount];
+            for(int i = 0; i < attrCount; i++)
+                attrs[i] = readColumn(buffer, sampleSize, attrOptions[i]);
+            if(buffer.hasRemaining())
+                throw new IOException("Dataset cache corrupted!");
+
+            return new Dataset(labelOptions, attrCount, attrOptions, sampleSize, labels, attrs);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Dataset cache corrupted!", e);
+        }
+    }
+
+    /**
+     * Write the cache of a source file's dataset. The cache is written aside then moved in place,
+     * so a concurrent or interrupted run never sees a partial cache.
+     * @param sourceSize    Size of the source file when its parsing started.
+     * @param sourceLastModified    Mtime of the source file when its parsing started, so that a file changed
+     *                              while being parsed leaves a cache that is already stale.
+     */
+    public static void save(final File sourceFile, final long sourceSize, final long sourceLastModified,
+                            final Dataset dataset) throws IOException{
+        int attrCount = dataset.getAttrCount();
+        int sampleSize = dataset.getSampleSize();
+
+        long size = HEADER_SIZE + 4L * attrCount;
+        size += 1 + (long) dataset.getLabelColumn().width() * sampleSize;
+        for(int i = 0; i < attrCount; i++)
+            size += 1 + (long) dataset.getAttrColumn(i).width() * sampleSize;
+        if(size > Integer.MAX_VALUE)
+            throw new IOException("Dataset too large to cache!");
+
+        File cacheFile = cacheFileOf(sourceFile);
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try(RandomAccessFile file = new RandomAccessFile(tempFile, "rw");
+            FileChannel channel = file.getChannel()){
+            file.setLength(size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            /* Header */
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(sourceSize);
+            buffer.putLong(sourceLastModified);
+            buffer.putInt(dataset.getLabelOptions());
+            buffer.putInt(attrCount);
+            buffer.putInt(sampleSize);
+            for(int i = 0; i < attrCount; i++)
+                buffer.putInt(dataset.getAttrOptions()[i]);
+
+            /* Columns */
+            writeColumn(buffer, dataset.getLabelColumn(), sampleSize);
+            for(int i = 0; i < attrCount; i++)
+                writeColumn(buffer, dataset.getAttrColumn(i), sampleSize);
+
+            buffer.force();
+        }
+        Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Column readColumn(final MappedByteBuffer buffer, final int sampleSize, final int options) throws IOException{
+        int width = buffer.get();
+        if((width != 1 && width != 2 && width != 4) || (long) width * sampleSize > buffer.remaining())
+            throw new IOException("Dataset cache corrupted!");
+
+        Column column = Column.allocateWidth(width, sampleSize);
+        column.readFrom(buffer);
+        for(int i = 0; i < sampleSize; i++){
+            int value = column.get(i);
+            if(value < 0 || value >= options)
+                throw new IOException("Dataset cache corrupted!");
+        }
+        return column;
+    }
+
+    private static void writeColumn(final MappedByteBuffer buffer, final Column column, final int sampleSize) throws IOException{
+        if(column.size() != sampleSize)
+            throw new IOException("Column size mismatches the dataset!");
+        buffer.put((byte) column.width());
+        column.writeTo(buffer);
+    }
+}
@@ -0,0 +1,101 @@
+package classification;
+
+import java.util.Arrays;
+
+/**
+ * Collapses identical samples of a Dataset, same label and same attributes, into one sample weighted by their count.
+ * Trees count weighted samples as that many samples, so they grow the same on the collapsed data,
+ * at a cost scaling with the distinct samples rather than all of them.
+ *
+ * Each sample is packed into a key of longs by PackedKeys, the label and each attribute taking the bits their options need,
+ * and looked up in an open-addressing table of the distinct samples so far. Distinct samples keep the order
+ * of their first occurrence. The table has at most MAX_CAPACITY slots, and is kept at most half full;
+ * data with more distinct samples than that is left as is.
+ */
+public class DatasetCollapser {
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private DatasetCollapser(){
+    }
+
+    /**
+     * @return the dataset with identical samples collapsed, or the dataset itself if it has none.
+     */
+    public static Dataset collapse(final Dataset data){
+        int sampleSize = data.getSampleSize();
+        int attrCount = data.getAttrCount();
+        int[] attrOptions = data.getAttrOptions();
+
+        /* Bits of the label, then of each attribute */
+        int[] fieldBits = new int[attrCount + 1];
+        fieldBits[0] = PackedKeys.bitsOf(data.getLabelOptions() + 1);
+        int keyBits = fieldBits[0];
+        for(int i = 0; i < attrCount; i++){
+            fieldBits[i + 1] = PackedKeys.bitsOf(attrOptions[i]);
+            keyBits += fieldBits[i + 1];
+        }
+        int keyWords = PackedKeys.wordsOf(keyBits);
+
+        /* Find each sample's distinct sample, counting their weights */
+        // Twice the samples rounded up to a power of two, in long as it overflows int past 2^29 samples
+        int capacity = (int) Math.min(MAX_CAPACITY, Long.highestOneBit(Math.max(16L, sampleSize) * 2 - 1) * 2);
+        int slotMask = capacity - 1;
+        int[] slots = new int[capacity];        // Distinct sample of a slot plus one, or 0 if empty
+        long[] distinctKeys = new long[16 * keyWords];
+        int[] distinctSamples = new int[16];    // First occurrence of each distinct sample
+        long[] distinctWeights = new long[16];
+        int distinctSize = 0;
+
+        long[] key = new long[keyWords];
+        int[] sampleAttr = new int[attrCount];
+        for(int s = 0; s < sampleSize; s++){
+            Arrays.fill(key, 0);
+            data.getSample(s, sampleAttr);
+            int bit = PackedKeys.pack(key, 0, data.getLabel(s), fieldBits[0]);
+            for(int i = 0; i < attrCount; i++)
+                bit = PackedKeys.pack(key, bit, sampleAttr[i], fieldBits[i + 1]);
+
+            int slot = (int) PackedKeys.hash(key) & slotMask;
+            while(slots[slot] != 0 && PackedKeys.keyEquals(distinctKeys, slots[slot] - 1, key) == false)
+                slot = (slot + 1) & slotMask;
+
+            if(slots[slot] == 0){
+                if(distinctSize == capacity / 2)
+                    return data; // Too many distinct samples to collapse
+                if(distinctSize == distinctSamples.length){
+                    if((long) distinctSize * 2 * keyWords > Integer.MAX_VALUE)
+                        return data;
+                    distinctKeys = Arrays.copyOf(distinctKeys, distinctSize * 2 * keyWords);
+                    distinctSamples = Arrays.copyOf(distinctSamples, distinctSize * 2);
+                    distinctWeights = Arrays.copyOf(distinctWeights, distinctSize * 2);
+                }
+                System.arraycopy(key, 0, distinctKeys, distinctSize * keyWords, keyWords);
+                distinctSamples[distinctSize] = s;
+                slots[slot] = ++distinctSize;
+            }
+            distinctWeights[slots[slot] - 1] += data.getWeight(s);
+        }
+        if(distinctSize == sampleSize)
+            return data;
+
+        /* Copy the distinct samples */
+        Column labels = Column.allocate(data.getLabelOptions() + 1, distinctSize);
+        Column[] attrs = new Column[attrCount];
+        for(int i = 0; i < attrCount; i++)
+            attrs[i] = Column.allocate(attrOptions[i], distinctSize);
+        long maxWeight = 0;
+        for(int d = 0; d < distinctSize; d++)
+            maxWeight = Math.max(maxWeight, distinctWeights[d]);
+        if(maxWeight > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many identical samples to weigh!");
+        Column weights = Column.allocate((int) Math.min(Integer.MAX_VALUE, maxWeight + 1), distinctSize);
+        for(int d = 0; d < distinctSize; d++){
+            int s = distinctSamples[d];
+            labels.set(d, data.getLabel(s));
+            for(int i = 0; i < attrCount; i++)
+                attrs[i].set(d, data.getAttr(s, i));
+            weights.set(d, (int) distinctWeights[d]);
+        }
+        return new Dataset(data.getLabelOptions(), attrCount, attrOptions, distinctSize, labels, attrs, weights);
+    }
+}
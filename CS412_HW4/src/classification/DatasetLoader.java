@@ -0,0 +1,174 @@
+package classification;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a data file into a Dataset, either from its binary cache or by parsing the text in parallel.
+ * The file is split into newline-aligned byte ranges, each parsed by its own SampleReader into its own
+ * DatasetBuilder on the executor; the chunks' dimensions are merged once all are done.
+ *
+ * Loading is split into start() and finish(), so that several files can be parsed at the same time
+ * without any task of the executor waiting on another.
+ */
+public class DatasetLoader {
+    /* Files smaller than this are parsed as a single chunk */
+    private static final long MIN_CHUNK_SIZE = 4L << 20;
+
+    // Configuration
+    private final File _file;
+    private final boolean _useDatasetCache;
+    private final long _fileSize;           // Size and mtime of the file before loading, as recorded by its cache
+    private final long _fileLastModified;
+
+    // Loading status
+    private Dataset _dataset;
+    private FileChannel _channel;
+    private List<Future<DatasetBuilder>> _chunks;
+
+    private DatasetLoader(final File file, final boolean useDatasetCache){
+        this._file = file;
+        this._useDatasetCache = useDatasetCache;
+        this._fileSize = file.length();
+        this._fileLastModified = file.lastModified();
+    }
+
+    /**
+     * Start loading a data file.
+     * @param parallelism   Maximum number of chunks to parse at the same time.
+     */
+    public static DatasetLoader start(final File file, final boolean useDatasetCache,
+                                      final ExecutorService executor, final int parallelism) throws IOException{
+        DatasetLoader datasetLoader = new DatasetLoader(file, useDatasetCache);
+
+        /* Serve from cache if up to date */
+        if(useDatasetCache){
+            try {
+                datasetLoader._dataset = DatasetCache.load(file);
+                if(datasetLoader._dataset != null)
+                    return datasetLoader;
+            } catch (IOException e) {
+                System.err.println("Ignoring cache of " + file.getPath() + ": " + e.getMessage());
+            }
+        }
+
+        /* Otherwise submit a parsing task per chunk */
+        datasetLoader._channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        long[] boundaries = splitLines(datasetLoader._channel, parallelism, MIN_CHUNK_SIZE);
+        datasetLoader._chunks = new ArrayList<>(boundaries.length - 1);
+        for(int i = 0; i < boundaries.length - 1; i++){
+            final FileChannel channel = datasetLoader._channel;
+            final long start = boundaries[i];
+            final long end = boundaries[i + 1];
+            datasetLoader._chunks.add(executor.submit(new Callable<DatasetBuilder>() {
+                @Override
+                public DatasetBuilder call() throws IOException {
+                    return parseChunk(channel, start, end);
+                }
+            }));
+        }
+        return datasetLoader;
+    }
+
+    /**
+     * Wait for the chunks to be parsed and merge them.
+     * @return the file's dataset, in its own dimension.
+     */
+    public Dataset finish() throws IOException, InterruptedException{
+        if(_dataset != null)
+            return _dataset;
+
+        try {
+            List<DatasetBuilder> datasetBuilders = new ArrayList<>(_chunks.size());
+            for(Future<DatasetBuilder> chunk : _chunks)
+                datasetBuilders.add(chunk.get());
+
+            if(datasetBuilders.size() == 1){
+                DatasetBuilder datasetBuilder = datasetBuilders.get(0);
+                _dataset = datasetBuilder.build(datasetBuilder.getLabelOptions(), datasetBuilder.getAttrCount());
+            } else {
+                _dataset = DatasetBuilder.concat(datasetBuilders);
+            }
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Failed to parse " + _file.getPath(), e.getCause());
+        } finally {
+            for(Future<DatasetBuilder> chunk : _chunks)
+                chunk.cancel(true);
+            _channel.close();
+        }
+
+        if(_useDatasetCache){
+            try {
+                DatasetCache.save(_file, _fileSize, _fileLastModified, _dataset);
+            } catch (IOException e) {
+                System.err.println("Failed to cache " + _file.getPath() + ": " + e.getMessage());
+            }
+        }
+        return _dataset;
+    }
+
+    /**
+     * Parse the samples within [start, end) of a file.
+     */
+    static DatasetBuilder parseChunk(final FileChannel channel, final long start, final long end) throws IOException{
+        DatasetBuilder datasetBuilder = new DatasetBuilder();
+        try(SampleReader sampleReader = new SampleReader(channel, start, end)){
+            while(sampleReader.next()){
+                datasetBuilder.add(sampleReader.getLabel(), sampleReader.getAttrs(), sampleReader.getRowAttrCount());
+            }
+        }
+        return datasetBuilder;
+    }
+
+    /**
+     * Split a file into at most chunkCount byte ranges, each starting at the beginning of a line.
+     * @param minChunkSize  Fewest bytes of a range, but for lines running past it.
+     * @return boundaries of the ranges, from 0 to the file size.
+     */
+    static long[] splitLines(final FileChannel channel, final int chunkCount, final long minChunkSize) throws IOException{
+        long size = channel.size();
+        int count = (int) Math.max(1, Math.min(chunkCount, size / minChunkSize));
+
+        long[] boundaries = new long[count + 1];
+        int boundaryCount = 1;
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for(int i = 1; i < count; i++){
+            /* Move the even split point forward past the next newline */
+            long position = Math.max(size / count * i, boundaries[boundaryCount - 1]);
+            boolean found = false;
+            while(found == false && position < size){
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if(read <= 0)
+                    break;
+                for(int j = 0; j < read; j++){
+                    if(buffer.get(j) == '\n'){
+                        position += j + 1;
+                        found = true;
+                        break;
+                    }
+                }
+                if(found == false)
+                    position += read;
+            }
+            if(position < size && position > boundaries[boundaryCount - 1])
+                boundaries[boundaryCount++] = position;
+        }
+        boundaries[boundaryCount++] = size;
+
+        long[] result = new long[boundaryCount];
+        System.arraycopy(boundaries, 0, result, 0, boundaryCount);
+        return result;
+    }
+}
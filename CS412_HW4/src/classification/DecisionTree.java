@@ -1,126 +1,203 @@
-package classification;
-
-import java.util.ArrayList;
-
-/**
- * Created by nacos on 11/4/2016.
- */
-public class DecisionTree extends Classifier{
-    public static void main(String[] args) throws Exception{
-        /* Handle arguments */
-        if(args.length != 2)
-            throw new IllegalArgumentException("Arguments should contain a train-file and a test-file!");
-
-        DecisionTree decisionTree = new DecisionTree(args[0], args[1]);
-
-        decisionTree.readDataFromFiles();
-
-        decisionTree.train();
-
-        //decisionTree.printDTStructure();
-
-        decisionTree.evaluateQuality();
-
-        final int[][] matrix = decisionTree.getConfusionMatrix();
-        int k = decisionTree.getLabelOptions();
-        for(int i = 0; i < k; i++){
-            for(int j = 0; j < k; j++){
-                System.out.print(matrix[i][j] + "\t");
-            }
-            System.out.println();
-        }
-
-        return;
-    }
-
-    // Configuration
-    // NULL
-
-    // Decision Tree
-    private DecisionTreeKernel _decisionTreeKernel;
-
-
-    /**
-     * Constructor
-     */
-    public DecisionTree(final String trainFileName, final String testFileName){
-        super(trainFileName, testFileName);
-    }
-
-
-    /**
-     * Step 2:Implement Basic Classification Method.
-     * Train a decision tree from training data.
-     */
-    @Override
-    public int train() throws Exception{
-        /* Check if data OK */
-        if((_trainLabels != null && _trainSampleSize > 0 && _testLabels != null && _testSampleSize > 0 ) == false){
-            System.err.println("Please read valid train and test data before training decision tree!");
-            return -1;
-        }
-
-        /* Initiate attributes usage status */
-        boolean[] availableAttrs = new boolean[_attrCount];
-        for(int i = 0; i < _attrCount; i++)
-            availableAttrs[i] = true;
-
-
-        _decisionTreeKernel = new DecisionTreeKernel(false,
-                    _labelOptions, _attrCount, _attrOptions,
-                    _trainSampleSize, _trainLabels, _trainAttrs
-                );
-        _decisionTreeKernel.train();
-
-        ArrayList<Integer> trainLabels = new ArrayList<>(_trainSampleSize);
-        ArrayList<int[]> trainAttrs = new ArrayList<>(_trainSampleSize);
-
-        return 0;
-    }
-
-    /**
-     * Step 2:Implement Basic Classification Method.
-     * Print the decision tree to standard output.
-     */
-    public void printDTStructure(){
-        _decisionTreeKernel.printDTStructure();
-    }
-
-    /**
-     * Step 2:Implement Basic Classification Method.
-     * Use the trained decision tree to predict a sample's label
-     */
-    @Override
-    public int predictSample(final int[] sampleAttr){
-        /* Check if tree not grown */
-        if(_decisionTreeKernel == null){
-            System.err.println("Decision tree must be trained before it can predict any sample!");
-            return -1;
-        }
-
-        return _decisionTreeKernel.predictSample(sampleAttr);
-    }
-    /**
-     * Step 2:Implement Basic Classification Method.
-     * Generate confusion matrix on the test data.
-     */
-    public int evaluateQuality(){
-        _confusionMatrix = new int[_labelOptions][_labelOptions];
-
-        for(int i = 0; i < _testSampleSize; i++){
-            /* Compare predicted label to actual actual */
-            int predictedLabel = predictSample(_testAttrs.get(i));
-            int actualLabel = _testLabels.get(i);
-            _confusionMatrix[actualLabel - 1][predictedLabel - 1]++;
-        }
-
-        return 0;
-    }
-
-    /**
-     * Getters
-     */
-    public int[][] getConfusionMatrix() {
-        return _confusionMatrix;
-    }
-}
+package classification;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Created by nacos on 11/4/2016.
+ */
+public class DecisionTree extends Classifier implements Predictor{
+    public static void main(String[] args) throws Exception{
+        /* Handle arguments */
+        if(args.length != 2)
+            throw new IllegalArgumentException("Arguments should contain a train-file and a test-file!");
+
+        DecisionTree decisionTree = new DecisionTree(args[0], args[1]);
+
+        decisionTree.readDataFromFiles();
+
+        decisionTree.train();
+        if(TrainingStats.ENABLED)
+            System.out.print(decisionTree.getTrainingStats());
+
+        //decisionTree.printDTStructure();
+
+        decisionTree.evaluateQuality();
+
+        final int[][] matrix = decisionTree.getConfusionMatrix();
+        int k = decisionTree.getLabelOptions();
+        for(int i = 0; i < k; i++){
+            for(int j = 0; j < k; j++){
+                System.out.print(matrix[i][j] + "\t");
+            }
+            System.out.println();
+        }
+
+        return;
+    }
+
+    // Configuration
+    private GrowthLimits _growthLimits = new GrowthLimits();
+
+    // Decision Tree
+    private DecisionTreeKernel _decisionTreeKernel;
+
+
+    /**
+     * Constructor
+     */
+    public DecisionTree(final String trainFileName, final String testFileName){
+        super(trainFileName, testFileName);
+    }
+
+
+    /**
+     * Step 2:Implement Basic Classification Method.
+     * Train a decision tree from training data.
+     */
+    @Override
+    public int train() throws Exception{
+        /* Check if data OK */
+        if((_trainData != null && _trainSampleSize > 0 && _testData != null && _testSampleSize > 0 ) == false){
+            System.err.println("Please read valid train and test data before training decision tree!");
+            return -1;
+        }
+
+        _decisionTreeKernel = new DecisionTreeKernel(false, _trainData, null, null);
+        _decisionTreeKernel.setGrowthLimits(_growthLimits);
+        if(_executor instanceof ForkJoinPool)
+            _decisionTreeKernel.train((ForkJoinPool) _executor);
+        else
+            _decisionTreeKernel.train();
+
+        return 0;
+    }
+
+    /**
+     * Train a decision tree from the training file without loading it, growing the tree level by level
+     * with one pass over the file per level, so that the training data may exceed the heap.
+     * The tree is the same as train() grows. Test data can then be read and evaluated as usual.
+     */
+    public int trainOutOfCore() throws Exception{
+        File trainFile = new File(_trainFilename);
+        if(trainFile.exists() == false || trainFile.isFile() == false)
+            throw new FileNotFoundException("Train file not found!");
+
+        FileHistogramSource histogramSource = new FileHistogramSource(trainFile);
+        histogramSource.scanDimension();
+        if(histogramSource.getLabelOptions() < 2 || histogramSource.getAttrOptions().length < 1)
+            throw new Exception("Train data seems to be corrupted!");
+
+        LevelWiseTree levelWiseTree = new LevelWiseTree(histogramSource.getLabelOptions(), histogramSource.getAttrOptions());
+        levelWiseTree.setGrowthLimits(_growthLimits);
+        _decisionTreeKernel = levelWiseTree.build(histogramSource);
+        setModelMetadata(_decisionTreeKernel.getLabelOptions(), _decisionTreeKernel.getAttrCount(),
+                _decisionTreeKernel.getAttrOptions());
+        return 0;
+    }
+
+    /**
+     * Train a decision tree level by level with worker JVMs launched on this machine,
+     * each owning a shard of the training file. The tree is the same as train() grows.
+     */
+    public int trainDistributed(final int workerCount) throws Exception{
+        File trainFile = new File(_trainFilename);
+        if(trainFile.exists() == false || trainFile.isFile() == false)
+            throw new FileNotFoundException("Train file not found!");
+
+        try(DistributedHistogramSource histogramSource = DistributedHistogramSource.launchLocal(trainFile, workerCount)){
+            return trainDistributed(histogramSource);
+        }
+    }
+
+    /**
+     * Train a decision tree level by level with the workers of a histogram source, e.g. on other hosts.
+     * The source is left open.
+     */
+    public int trainDistributed(final DistributedHistogramSource histogramSource) throws Exception{
+        histogramSource.scanDimension();
+        if(histogramSource.getLabelOptions() < 2 || histogramSource.getAttrOptions().length < 1)
+            throw new Exception("Train data seems to be corrupted!");
+
+        LevelWiseTree levelWiseTree = new LevelWiseTree(histogramSource.getLabelOptions(), histogramSource.getAttrOptions());
+        levelWiseTree.setGrowthLimits(_growthLimits);
+        _decisionTreeKernel = levelWiseTree.build(histogramSource);
+        setModelMetadata(_decisionTreeKernel.getLabelOptions(), _decisionTreeKernel.getAttrCount(),
+                _decisionTreeKernel.getAttrOptions());
+        return 0;
+    }
+
+    /**
+     * Save the trained decision tree to a model file.
+     */
+    public void saveModel(final File modelFile) throws Exception{
+        if(_decisionTreeKernel == null)
+            throw new Exception("Decision tree must be trained before it can be saved!");
+        ModelFile.save(modelFile, ModelFile.KIND_DECISION_TREE, Collections.singletonList(_decisionTreeKernel));
+    }
+
+    /**
+     * Load a decision tree saved by saveModel() in place of training one.
+     * Test data can then be read and evaluated as usual.
+     */
+    public void loadModel(final File modelFile) throws Exception{
+        List<DecisionTreeKernel> decisionTreeKernels = ModelFile.load(modelFile, ModelFile.KIND_DECISION_TREE);
+        _decisionTreeKernel = decisionTreeKernels.get(0);
+        setModelMetadata(_decisionTreeKernel.getLabelOptions(), _decisionTreeKernel.getAttrCount(),
+                _decisionTreeKernel.getAttrOptions());
+    }
+
+    /**
+     * Step 2:Implement Basic Classification Method.
+     * Print the decision tree to standard output.
+     */
+    public void printDTStructure(){
+        _decisionTreeKernel.printDTStructure();
+    }
+
+    /**
+     * Step 2:Implement Basic Classification Method.
+     * Use the trained decision tree to predict a sample's label
+     */
+    @Override
+    public int predictSample(final int[] sampleAttr){
+        /* Check if tree not grown */
+        if(_decisionTreeKernel == null){
+            System.err.println("Decision tree must be trained before it can predict any sample!");
+            return -1;
+        }
+
+        return _decisionTreeKernel.predictSample(sampleAttr);
+    }
+    /**
+     * Predict the labels of a block of samples.
+     */
+    @Override
+    protected void predictBatch(final Dataset samples, final int sampleOffset, final int sampleCount,
+                                final int[] votes, final int[] predictedLabels){
+        _decisionTreeKernel.predictBatch(samples, sampleOffset, sampleCount, predictedLabels);
+    }
+
+    /**
+     * Setters
+     */
+    public void setGrowthLimits(final GrowthLimits growthLimits) {
+        this._growthLimits = growthLimits;
+    }
+
+    /**
+     * Getters
+     */
+    public int[][] getConfusionMatrix() {
+        return _confusionMatrix;
+    }
+    /**
+     * @return the stats of the last training, or null unless TrainingStats.ENABLED.
+     */
+    public TrainingStats getTrainingStats() {
+        return _decisionTreeKernel != null ? _decisionTreeKernel.getTrainingStats() : null;
+    }
+}
@@ -1,363 +1,791 @@
-package classification;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-
-/**
- * Created by nacos on 11/4/2016.
- */
-public class DecisionTreeKernel {
-    // Configuration
-    private boolean _isForestRI;
-
-    // Metadata
-    private int _labelOptions;
-    private int _attrCount;
-    private int[] _attrOptions;
-
-    // Train Data
-    private int _trainSampleSize;
-    private ArrayList<Integer> _trainLabels;
-    private ArrayList<int[]> _trainAttrs;
-
-    // Classifier
-    private DTNode _DTRoot;
-
-    /**
-     * Constructor
-     */
-    public DecisionTreeKernel(final boolean isForestRI,
-                              int labelOptions, int attrCount, int[] attrOptions,
-                              int trainSampleSize, ArrayList<Integer> trainLabels, ArrayList<int[]> trainAttrs){
-        // Configuration
-        this._isForestRI = isForestRI;
-
-        // Metadata
-        this._labelOptions = labelOptions;
-        this._attrCount = attrCount;
-        this._attrOptions = attrOptions;
-
-        // Train Data
-        this._trainSampleSize = trainSampleSize;
-        this._trainLabels = trainLabels;
-        this._trainAttrs = trainAttrs;
-    }
-
-    /**
-     * Step 2:Implement Basic Classification Method.
-     * Train a decision tree from training data.
-     */
-    public int train() throws Exception{
-        /* Check if data OK */
-        if((_trainLabels != null && _trainSampleSize > 0) == false){
-            System.err.println("Please read valid train and test data before training decision tree!");
-            return -1;
-        }
-
-        /* Initiate attributes usage status */
-        boolean[] availableAttrs = new boolean[_attrCount];
-        for(int i = 0; i < _attrCount; i++)
-            availableAttrs[i] = true;
-
-        /* Instantiate a DTNode as DecisionTree's root and grow its branches */
-        _DTRoot = new DTNode(_trainLabels, _trainAttrs, 0, -1, -1, -1, _attrCount, availableAttrs);
-        _DTRoot.growBranch();
-
-        return 0;
-    }
-
-    /**
-     * Step 2:Implement Basic Classification Method.
-     * Use the trained decision tree to predict a sample's label
-     */
-    public int predictSample(final int[] sampleAttr){
-        /* Check if tree not grown */
-        if(_DTRoot == null){
-            System.err.println("Decision tree must be trained before it can predict any sample!");
-            return -1;
-        }
-
-        /* Trace along the decision tree */
-        DTNode node = _DTRoot;
-        while(node._thisAttrIndex != -1){
-            node = node._childrenNodes[sampleAttr[node._thisAttrIndex]];
-        }
-        return node._predictLabel;
-    }
-
-    /**
-     * Step 2:Implement Basic Classification Method.
-     * Print the decision tree to standard output.
-     */
-    public void printDTStructure(){
-        boolean[] omits = new boolean[_attrCount];
-        _DTRoot.printBranch(omits);
-    }
-
-
-    /**
-     * Calculate the Gini-Index of a sample dataset on a given attr by building a AVC-list.
-     * @param attrIndex specifies the given attribute index.
-     */
-    public double getGiniIndexOnAttr(final ArrayList<Integer> sampleLabels, final ArrayList<int[]> sampleAttrs, final int attrIndex){
-        double sampleSize = sampleLabels.size();
-        int thisAttrOptions = _attrOptions[attrIndex];
-
-        /* Build AVC-set */
-        int[][] AVCset = new int[thisAttrOptions][_labelOptions];
-        for(int i = 0; i < sampleSize; i++){
-            int sampleLabel = sampleLabels.get(i);
-            int sampleThisAttr = sampleAttrs.get(i)[attrIndex];
-            AVCset[sampleThisAttr][sampleLabel-1]++;
-        }
-
-        /* Calculate Gini Index for each value of this attribute */
-        double[] attrValueSums = new double[thisAttrOptions];
-        double[] attrValueGini = new double[thisAttrOptions];
-        for(int i = 0; i < thisAttrOptions; i++){
-            attrValueGini[i] = 1;
-            for(int j = 0; j < _labelOptions; j++){
-                attrValueSums[i] += AVCset[i][j];
-            }
-        }
-        for(int i = 0; i < thisAttrOptions; i++){
-            for(int j = 0; j < _labelOptions; j++) {
-                if(attrValueSums[i] > 0)
-                    attrValueGini[i] -= Math.pow(AVCset[i][j] / attrValueSums[i], 2);
-            }
-        }
-
-        /* Sum up each value's Gini Index */
-        double giniIndex = 0;
-        for(int i = 0; i < thisAttrOptions; i++){
-            giniIndex += (attrValueGini[i] * attrValueSums[i] / sampleSize);
-        }
-        return giniIndex;
-    }
-
-    /**
-     * Calculate the Gini-Index of a sample dataset by building a AVC-list.
-     */
-    public double getGiniIndex(final ArrayList<Integer> sampleLabels, final ArrayList<int[]> sampleAttrs){
-        double sampleSize = sampleLabels.size();
-
-        int[] AVCset = new int[_labelOptions];
-
-        for(int i = 0; i < sampleSize; i++){
-            int sampleLabel = sampleLabels.get(i);
-            AVCset[sampleLabel-1] ++;
-        }
-
-        /* Calculate Gini Index for this sample data */
-        double giniIndex = 1;
-        for(int j = 0; j < _labelOptions; j++) {
-            giniIndex -= Math.pow(AVCset[j] / sampleSize, 2);
-        }
-        return giniIndex;
-    }
-
-    /*
-     * A class representing the nodes in a decision tree
-     */
-    public class DTNode {
-        // Sample data
-        private ArrayList<Integer> _sampleLabels;
-        private ArrayList<int[]> _sampleAttrs;
-        private int _thisAttrOptions;
-
-        // Tree-growth status
-        private int _remainingAttrsCount;
-        private boolean[] _availableAttrs;
-
-        // Current node data
-        private int _prevAttrIndex;
-        private int _prevAttrValue;
-        private int _thisAttrIndex;
-        private int _predictLabel;
-        private int _parentPopularLabel;
-
-        // Children nodes data
-        private DTNode[] _childrenNodes;
-        private int _branchDepth;
-        private int _nodeLayer;
-
-        /**
-         * Public constructor of DecisionTree Node
-         * @param sampleLabels  Labels of the sample data classified into this node.
-         * @param sampleAttrs   Attributes of the sample data classified into this node.
-         * @param prevAttrIndex The attribute that this node is grown on .
-         * @param prevAttrValue This node's value on the attribute.
-         * @param remainingAttrsCount   Available attributes left for further partitioning.
-         * @param availableAttrs    Boolean array to indicate available attributes left.
-         */
-        private DTNode(final ArrayList<Integer> sampleLabels, final ArrayList<int[]> sampleAttrs,
-                       final int parentLayer, final int prevAttrIndex, final int prevAttrValue, final int parentPopularLabel,
-                       final int remainingAttrsCount, final boolean[] availableAttrs) {
-            this._sampleLabels = sampleLabels;
-            this._sampleAttrs = sampleAttrs;
-
-            this._prevAttrIndex = prevAttrIndex;
-            this._prevAttrValue = prevAttrValue;
-            this._thisAttrIndex = -1;
-            this._predictLabel = -1;
-            this._parentPopularLabel = parentPopularLabel;
-
-            this._remainingAttrsCount = remainingAttrsCount;
-            this._availableAttrs = availableAttrs;
-
-            this._nodeLayer = parentLayer;
-        }
-
-        private int growBranch() {
-            int sampleSize = _sampleLabels.size();
-
-            /* Find the most possible value */
-            int[] possibleLabels = new int[_labelOptions];
-            for(int i = 0; i < sampleSize; i++) {
-                int thisSampleLabel = _sampleLabels.get(i);
-                possibleLabels[thisSampleLabel - 1]++;
-            }
-            int mostPossibleLabel = -1;
-            int mostPossibleLabelCount = 0;
-            for(int j = 0; j < _labelOptions; j++){
-                if(possibleLabels[j] > mostPossibleLabelCount){
-                    mostPossibleLabelCount = possibleLabels[j];
-                    mostPossibleLabel = j + 1;
-                }
-            }
-
-
-            /* Decide whether or not to stop partitioning */
-            boolean shouldStop = false;
-            if(_remainingAttrsCount == 0){ // No remaining attributes for further partitioning.
-                shouldStop = true;
-            } else if(sampleSize == 0){ // No samples left.
-                shouldStop = true;
-            } else if(mostPossibleLabelCount == sampleSize){ // All samples belong to the same class
-                shouldStop = true;
-            }
-            if(shouldStop == true) {
-                if(mostPossibleLabel != -1) {
-                    _predictLabel = mostPossibleLabel;
-                } else {
-                    _predictLabel = _parentPopularLabel;
-                }
-                _branchDepth = 0;
-                return _branchDepth;
-            }
-
-
-            /* Decide on a partition attribute */
-            double giniIndex = getGiniIndex(_sampleLabels, _sampleAttrs);
-            _thisAttrIndex = -1;
-            double maxGiniIndex = 0;
-            double[] reductionInImpurities = new double[_attrCount];
-
-            // TODO: Bootstrap
-            boolean[] availableAttrs = _availableAttrs.clone();
-            if(_isForestRI == true){
-                // Collect all candidates
-                ArrayList<Integer> candidateAttrIndexes = new ArrayList<>();
-                for(int i = 0; i < _attrCount; i++){
-                    if(availableAttrs[i] == true){
-                        candidateAttrIndexes.add(i);
-                    }
-                }
-
-                // Shuffle and select top k (sqrt());
-                int candidateAttrsCount = (int) Math.sqrt(_remainingAttrsCount);
-                Collections.shuffle(candidateAttrIndexes);
-                for(int i = candidateAttrsCount; i < candidateAttrIndexes.size(); i++){
-                    availableAttrs[candidateAttrIndexes.get(i)] = false;
-                }
-                _thisAttrIndex = candidateAttrIndexes.get(0);
-            }
-
-            // Find the attribute with the maximum Gini index to split
-            for(int i = 0; i < _attrCount; i++){
-                if(availableAttrs[i] == false)
-                    continue;
-
-                /* Select current attribute if it has the max reduction in impurity */
-                reductionInImpurities[i] = giniIndex - getGiniIndexOnAttr(_sampleLabels, _sampleAttrs, i);
-                if(reductionInImpurities[i] >= maxGiniIndex){
-                    _thisAttrIndex = i;
-                    maxGiniIndex = reductionInImpurities[i];
-                }
-            }
-            _thisAttrOptions = _attrOptions[_thisAttrIndex];
-
-
-            /* Partition the samples by the decided attribute */
-            ArrayList<ArrayList<Integer>> childrenLabels = new ArrayList<>(_thisAttrOptions);
-            ArrayList<ArrayList<int[]>> childrenAttrs = new ArrayList<>(_thisAttrOptions);
-            for(int i = 0; i < _thisAttrOptions; i++){
-                childrenLabels.add(new ArrayList<Integer>());
-                childrenAttrs.add(new ArrayList<int[]>());
-            }
-            for(int i = 0; i < sampleSize; i++){
-                int thisSamplePartitionAttrValue = _sampleAttrs.get(i)[_thisAttrIndex];
-                childrenLabels.get(thisSamplePartitionAttrValue).add( _sampleLabels.get(i));
-                childrenAttrs.get(thisSamplePartitionAttrValue).add(_sampleAttrs.get(i));
-            }
-
-            /* Grow a decision tree for each value's child */
-            boolean[] newAvailableAttrs = _availableAttrs.clone();
-            newAvailableAttrs[_thisAttrIndex] = false;
-
-            _childrenNodes = new DTNode[_thisAttrOptions];
-            Integer[] childrenDepths = new Integer[_thisAttrOptions];
-            for(int i = 0; i < _thisAttrOptions; i++){
-                _childrenNodes[i] = new DTNode(childrenLabels.get(i), childrenAttrs.get(i), _nodeLayer + 1, _thisAttrIndex, i, mostPossibleLabel, _remainingAttrsCount-1, newAvailableAttrs);
-                childrenDepths[i] = _childrenNodes[i].growBranch();
-            }
-
-            /* Select the deepest branch then add 1 as this branch depth */
-            _branchDepth = Collections.max(Arrays.asList(childrenDepths)) + 1;
-            return _branchDepth;
-        }
-
-        private void printBranch(final boolean[] omits){
-            if(_thisAttrIndex != -1) {
-                System.out.println("\u2500\u2500 #" + _thisAttrIndex);
-                for(int i = 0; i < _childrenNodes.length; i++){
-                    /* Omit those vertical table edges according to @param omits */
-                    for(int j = 0; j < _nodeLayer; j++) {
-                        if(omits[j] == false)
-                            System.out.print("    \u2502    ");
-                        else
-                            System.out.print("         ");
-                    }
-
-                    /* Decide the shape of the table corner before the last child
-                       and the blank vertical table edges */
-                    if(i == _childrenNodes.length - 1){
-                        System.out.print("    \u2514\u2500 " + i + " ");
-                        boolean[] nextOmits = omits.clone();
-                        nextOmits[_nodeLayer] = true;
-                        _childrenNodes[i].printBranch(nextOmits);
-                    } else {
-                        System.out.print("    \u251C\u2500 " + i + " ");
-                        _childrenNodes[i].printBranch(omits);
-                    }
-                }
-            } else {
-                System.out.println("-> [" + _predictLabel + "]");
-            }
-        }
-    }
-
-    /**
-     * Getters
-     */
-    public int getLabelOptions() {
-        return _labelOptions;
-    }
-    public int getAttrCount() {
-        return _attrCount;
-    }
-    public int[] getAttrOptions() {
-        return _attrOptions;
-    }
-}
+package classification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Created by nacos on 11/4/2016.
+ */
+public class DecisionTreeKernel {
+    /* Nodes with fewer samples are grown and evaluated inline instead of being forked as tasks */
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    // Configuration
+    private boolean _isForestRI;
+    private GrowthLimits _growthLimits = new GrowthLimits();
+    private SplittableRandom _random;
+    private ForkJoinPool _pool;
+
+    // Metadata
+    private int _labelOptions;
+    private int _attrCount;
+    private int[] _attrOptions;
+
+    // Train Data, released once trained
+    private int _trainSampleSize;
+    private Dataset _trainData;
+    private Column _trainSampleWeights; // Weight of each sample, or null if each counts once
+    private int[] _trainSampleIndexes; // Partitioned in place, each node owning a contiguous range
+    private int _trainSampleWeight;     // Samples counting their weights
+    private int _grownNodeCount;        // Nodes created so far, when node count is limited
+
+    // Classifier, compiled breadth-first into arrays indexed by node; the root is node 0
+    private int _nodeCount;
+    private int _treeDepth;
+    private int[] _splitAttrs;  // Attribute a node splits on, or -1 for a leaf
+    private int[] _childBases;  // Node of a split node's first child, its children being contiguous
+    private int[] _leafLabels;  // Label predicted by a leaf
+
+    // Instrumentation, only while TrainingStats.ENABLED
+    private TrainingStats _trainingStats;
+
+    /**
+     * Constructor
+     * @param trainData Training samples shared among kernels.
+     * @param trainSampleWeights    Weight of each sample in trainData, e.g. its multiplicity in a bootstrap,
+     *                              or null to take the data's own weights. Samples of weight 0 are left out.
+     * @param random    Source of the random attribute selection when isForestRI, or null for an unseeded one.
+     */
+    public DecisionTreeKernel(final boolean isForestRI, final Dataset trainData, final Column trainSampleWeights,
+                              final SplittableRandom random){
+        // Configuration
+        this._isForestRI = isForestRI;
+        this._random = (random != null || isForestRI == false) ? random : new SplittableRandom();
+
+        // Metadata
+        this._labelOptions = trainData.getLabelOptions();
+        this._attrCount = trainData.getAttrCount();
+        this._attrOptions = trainData.getAttrOptions();
+
+        // Train Data
+        this._trainData = trainData;
+        this._trainSampleWeights = trainSampleWeights != null ? trainSampleWeights : trainData.getWeights();
+        int sampleSize = trainData.getSampleSize();
+        if(_trainSampleWeights != null) {
+            // Index each sample of a positive weight; duplicates are weighted, never copied
+            int drawnSize = 0;
+            for(int i = 0; i < sampleSize; i++){
+                if(_trainSampleWeights.get(i) != 0)
+                    drawnSize++;
+            }
+            this._trainSampleIndexes = new int[drawnSize];
+            drawnSize = 0;
+            for(int i = 0; i < sampleSize; i++){
+                if(_trainSampleWeights.get(i) != 0)
+                    _trainSampleIndexes[drawnSize++] = i;
+            }
+        } else {
+            this._trainSampleIndexes = new int[sampleSize];
+            for(int i = 0; i < sampleSize; i++)
+                _trainSampleIndexes[i] = i;
+        }
+        this._trainSampleSize = _trainSampleIndexes.length;
+    }
+
+    /**
+     * Constructor of an already trained tree from its compiled node arrays, e.g. as loaded by ModelFile.
+     * @throws IllegalArgumentException if the arrays do not make up a valid tree of the given dimension.
+     */
+    public DecisionTreeKernel(final int labelOptions, final int attrCount, final int[] attrOptions, final int treeDepth,
+                              final int[] splitAttrs, final int[] childBases, final int[] leafLabels){
+        int nodeCount = splitAttrs.length;
+        if(nodeCount == 0 || childBases.length != nodeCount || leafLabels.length != nodeCount || attrOptions.length != attrCount)
+            throw new IllegalArgumentException("Inconsistent node arrays!");
+
+        /* Children must come after their parent and stay within the tree, so that any walk ends at a leaf */
+        for(int i = 0; i < nodeCount; i++){
+            int attr = splitAttrs[i];
+            if(attr == -1){
+                if(leafLabels[i] < 1 || leafLabels[i] > labelOptions)
+                    throw new IllegalArgumentException("Leaf #" + i + " has an invalid label!");
+            } else if(attr < 0 || attr >= attrCount
+                    || childBases[i] <= i || (long) childBases[i] + attrOptions[attr] > nodeCount){
+                throw new IllegalArgumentException("Node #" + i + " has an invalid split!");
+            }
+        }
+
+        // Configuration
+        this._isForestRI = false;
+
+        // Metadata
+        this._labelOptions = labelOptions;
+        this._attrCount = attrCount;
+        this._attrOptions = attrOptions;
+
+        // Classifier
+        this._nodeCount = nodeCount;
+        this._treeDepth = treeDepth;
+        this._splitAttrs = splitAttrs;
+        this._childBases = childBases;
+        this._leafLabels = leafLabels;
+    }
+
+    /**
+     * Step 2:Implement Basic Classification Method.
+     * Train a decision tree from training data, growing large subtrees and
+     * evaluating attributes of large nodes in parallel on the pool.
+     * The grown tree is the same as the one grown sequentially.
+     */
+    public int train(final ForkJoinPool pool) throws Exception{
+        _pool = pool;
+        try {
+            return train();
+        } finally {
+            _pool = null;
+        }
+    }
+
+    /**
+     * Step 2:Implement Basic Classification Method.
+     * Train a decision tree from training data.
+     */
+    public int train() throws Exception{
+        /* Check if data OK */
+        if((_trainData != null && _trainSampleSize > 0) == false){
+            System.err.println("Please read valid train and test data before training decision tree!");
+            return -1;
+        }
+
+        if(TrainingStats.ENABLED){
+            _trainingStats = new TrainingStats();
+            _trainingStats.beginTree();
+        }
+
+        /* Initiate attributes usage status */
+        boolean[] availableAttrs = new boolean[_attrCount];
+        for(int i = 0; i < _attrCount; i++)
+            availableAttrs[i] = true;
+
+        /* Instantiate a DTNode as DecisionTree's root and grow its branches */
+        AVCHistogram rootHistogram = new AVCHistogram(_labelOptions, _attrOptions,
+                AVCHistogram.countLabels(_trainData, _trainSampleWeights, _trainSampleIndexes, 0, _trainSampleSize));
+        final DTNode root = new DTNode(0, _trainSampleSize, rootHistogram, 0, -1, -1, -1, _attrCount, availableAttrs, _random);
+        _trainSampleWeight = rootHistogram.getTotal();
+        if(_growthLimits.isNodeCountLimited() && _pool != null){
+            // Within the pool, so that large nodes count their AVC-sets on its workers
+            _pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    growBreadthFirst(root);
+                }
+            });
+        } else if(_growthLimits.isNodeCountLimited())
+            growBreadthFirst(root);
+        else if(_pool != null)
+            _pool.invoke(root.new GrowTask());
+        else
+            root.growBranch();
+
+        /* Keep only the split metadata of the trained tree, compiled into arrays */
+        compile(root);
+        if(TrainingStats.ENABLED)
+            _trainingStats.endTree(_trainSampleSize, _splitAttrs, _childBases, _attrOptions, _treeDepth);
+        _trainData = null;
+        _trainSampleWeights = null;
+        _trainSampleIndexes = null;
+        _random = null;
+
+        return 0;
+    }
+
+    /**
+     * Step 2:Implement Basic Classification Method.
+     * Use the trained decision tree to predict a sample's label
+     */
+    public int predictSample(final int[] sampleAttr){
+        /* Check if tree not grown */
+        if(_splitAttrs == null){
+            System.err.println("Decision tree must be trained before it can predict any sample!");
+            return -1;
+        }
+
+        /* Trace along the decision tree */
+        final int[] splitAttrs = _splitAttrs;
+        final int[] childBases = _childBases;
+        int node = 0;
+        int attr;
+        while((attr = splitAttrs[node]) != -1){
+            int attrValue = sampleAttr[attr];
+            if(attrValue < 0 || attrValue >= _attrOptions[attr])
+                throw new IllegalArgumentException("Sample's attribute #" + attr + " is out of the trained range!");
+            node = childBases[node] + attrValue;
+        }
+        return _leafLabels[node];
+    }
+
+    /**
+     * Use the trained decision tree to predict the label of a dataset's sample, read in place.
+     */
+    public int predictSample(final Dataset samples, final int sampleIndex){
+        if(_splitAttrs == null)
+            throw new IllegalStateException("Decision tree must be trained before it can predict any sample!");
+
+        final int[] splitAttrs = _splitAttrs;
+        final int[] childBases = _childBases;
+        int node = 0;
+        int attr;
+        while((attr = splitAttrs[node]) != -1){
+            int attrValue = samples.getAttr(sampleIndex, attr);
+            if(attrValue < 0 || attrValue >= _attrOptions[attr])
+                throw new IllegalArgumentException("Sample's attribute #" + attr + " is out of the trained range!");
+            node = childBases[node] + attrValue;
+        }
+        return _leafLabels[node];
+    }
+
+    /**
+     * Predict the labels of a block of samples, walking the tree once per sample
+     * while the tree's node arrays stay in cache for the whole block.
+     * @param samples   Samples of which [sampleOffset, sampleOffset + sampleCount) are predicted.
+     * @param predictedLabels   Output of at least sampleCount labels.
+     */
+    public void predictBatch(final Dataset samples, final int sampleOffset, final int sampleCount, final int[] predictedLabels){
+        if(_splitAttrs == null)
+            throw new IllegalStateException("Decision tree must be trained before it can predict any sample!");
+
+        final int[] splitAttrs = _splitAttrs;
+        final int[] childBases = _childBases;
+        final int[] leafLabels = _leafLabels;
+        for(int i = 0; i < sampleCount; i++){
+            int sampleIndex = sampleOffset + i;
+            int node = 0;
+            int attr;
+            while((attr = splitAttrs[node]) != -1){
+                int attrValue = samples.getAttr(sampleIndex, attr);
+                if(attrValue < 0 || attrValue >= _attrOptions[attr])
+                    throw new IllegalArgumentException("Sample's attribute #" + attr + " is out of the trained range!");
+                node = childBases[node] + attrValue;
+            }
+            predictedLabels[i] = leafLabels[node];
+        }
+    }
+
+    /**
+     * Grow a tree layer by layer, one node at a time, splitting nodes while the node count allows,
+     * so that a limited tree keeps its upper layers whole rather than its first branches.
+     */
+    private void growBreadthFirst(final DTNode root){
+        _grownNodeCount = 1;
+        ArrayList<DTNode> queue = new ArrayList<>();
+        queue.add(root);
+        for(int i = 0; i < queue.size(); i++){
+            DTNode node = queue.get(i);
+            if(node.split())
+                queue.addAll(Arrays.asList(node._childrenNodes));
+        }
+
+        /* Children come after their parent, so depths are known bottom-up in reverse order */
+        for(int i = queue.size() - 1; i >= 0; i--){
+            DTNode node = queue.get(i);
+            if(node._thisAttrIndex == -1)
+                continue;
+            int maxChildDepth = 0;
+            for(DTNode child : node._childrenNodes)
+                maxChildDepth = Math.max(maxChildDepth, child._branchDepth);
+            node._branchDepth = maxChildDepth + 1;
+        }
+    }
+
+    /**
+     * Lay the grown DTNode graph out breadth-first into the node arrays,
+     * the children of each split node taking consecutive indexes.
+     */
+    private void compile(final DTNode root){
+        /* Enumerate nodes breadth-first; a node's index is its position in the queue */
+        ArrayList<DTNode> queue = new ArrayList<>();
+        queue.add(root);
+        for(int i = 0; i < queue.size(); i++){
+            DTNode node = queue.get(i);
+            if(node._thisAttrIndex != -1)
+                queue.addAll(Arrays.asList(node._childrenNodes));
+        }
+
+        _nodeCount = queue.size();
+        _treeDepth = root._branchDepth;
+        _splitAttrs = new int[_nodeCount];
+        _childBases = new int[_nodeCount];
+        _leafLabels = new int[_nodeCount];
+        int nextChildBase = 1;
+        for(int i = 0; i < _nodeCount; i++){
+            DTNode node = queue.get(i);
+            _splitAttrs[i] = node._thisAttrIndex;
+            if(node._thisAttrIndex != -1){
+                _childBases[i] = nextChildBase;
+                nextChildBase += node._childrenNodes.length;
+            } else {
+                _leafLabels[i] = node._predictLabel;
+            }
+        }
+    }
+
+    /**
+     * Step 2:Implement Basic Classification Method.
+     * Print the decision tree to standard output.
+     */
+    public void printDTStructure(){
+        boolean[] omits = new boolean[_attrCount];
+        printBranch(0, 0, omits);
+    }
+
+    private void printBranch(final int node, final int nodeLayer, final boolean[] omits){
+        int attr = _splitAttrs[node];
+        if(attr != -1) {
+            System.out.println("\u2500\u2500 #" + attr);
+            int childrenCount = _attrOptions[attr];
+            for(int i = 0; i < childrenCount; i++){
+                /* Omit those vertical table edges according to @param omits */
+                for(int j = 0; j < nodeLayer; j++) {
+                    if(omits[j] == false)
+                        System.out.print("    \u2502    ");
+                    else
+                        System.out.print("         ");
+                }
+
+                /* Decide the shape of the table corner before the last child
+                   and the blank vertical table edges */
+                if(i == childrenCount - 1){
+                    System.out.print("    \u2514\u2500 " + i + " ");
+                    boolean[] nextOmits = omits.clone();
+                    nextOmits[nodeLayer] = true;
+                    printBranch(_childBases[node] + i, nodeLayer + 1, nextOmits);
+                } else {
+                    System.out.print("    \u251C\u2500 " + i + " ");
+                    printBranch(_childBases[node] + i, nodeLayer + 1, omits);
+                }
+            }
+        } else {
+            System.out.println("-> [" + _leafLabels[node] + "]");
+        }
+    }
+
+
+    /**
+     * Calculate the Gini-Index of a sample dataset on a given attr from its AVC-set.
+     * @param avcSet    The samples' AVC-set on the attribute, as counted by AVCHistogram.
+     * @param attrIndex specifies the given attribute index.
+     * @param sampleWeight  Number of the samples, counting each with its weight.
+     */
+    public double getGiniIndexOnAttr(final int[] avcSet, final int attrIndex, final int sampleWeight){
+        return GiniImpurity.giniIndexOnAttr(avcSet, _attrOptions[attrIndex], _labelOptions, sampleWeight);
+    }
+
+    /**
+     * Calculate the Gini-Index of a sample dataset from its label totals.
+     * @param sampleWeight  Number of the samples, counting each with its weight.
+     */
+    public double getGiniIndex(final int[] labelCounts, final int sampleWeight){
+        return GiniImpurity.giniIndex(labelCounts, 0, _labelOptions, sampleWeight);
+    }
+
+    /**
+     * Reorder sample indexes so that the samples taking value v on the column
+     * end up within [childrenOffsets[v], childrenOffsets[v + 1]), swapping in place (American flag sort).
+     */
+    private static void partitionInPlace(final int[] sampleIndexes, final Column column, final int[] childrenOffsets){
+        int options = childrenOffsets.length - 1;
+        int[] heads = Arrays.copyOf(childrenOffsets, options);
+        for(int v = 0; v < options; v++){
+            int tail = childrenOffsets[v + 1];
+            while(heads[v] < tail){
+                int sampleIndex = sampleIndexes[heads[v]];
+                int value = column.get(sampleIndex);
+                if(value == v){
+                    heads[v]++;
+                } else {
+                    sampleIndexes[heads[v]] = sampleIndexes[heads[value]];
+                    sampleIndexes[heads[value]++] = sampleIndex;
+                }
+            }
+        }
+    }
+
+    /*
+     * A class representing the nodes in a decision tree
+     */
+    public class DTNode {
+        // Sample data, as a range of the kernel's sample indexes
+        private int _sampleOffset;
+        private int _sampleCount;
+        private AVCHistogram _histogram;
+        private int _thisAttrOptions;
+
+        // Tree-growth status
+        private int _remainingAttrsCount;
+        private boolean[] _availableAttrs;
+        private SplittableRandom _nodeRandom;
+
+        // Current node data
+        private int _prevAttrIndex;
+        private int _prevAttrValue;
+        private int _thisAttrIndex;
+        private int _predictLabel;
+        private int _parentPopularLabel;
+
+        // Children nodes data
+        private DTNode[] _childrenNodes;
+        private int _branchDepth;
+        private int _nodeLayer;
+
+        /**
+         * Public constructor of DecisionTree Node
+         * @param sampleOffset  Start of the sample data classified into this node, within the kernel's sample indexes.
+         * @param sampleCount   Number of the sample data classified into this node.
+         * @param histogram     The sample data's label totals, and the AVC-sets already derived by the parent if any.
+         * @param prevAttrIndex The attribute that this node is grown on .
+         * @param prevAttrValue This node's value on the attribute.
+         * @param remainingAttrsCount   Available attributes left for further partitioning.
+         * @param availableAttrs    Boolean array to indicate available attributes left.
+         * @param nodeRandom    This node's own source of random attribute selection, if isForestRI.
+         */
+        private DTNode(final int sampleOffset, final int sampleCount, final AVCHistogram histogram,
+                       final int parentLayer, final int prevAttrIndex, final int prevAttrValue, final int parentPopularLabel,
+                       final int remainingAttrsCount, final boolean[] availableAttrs, final SplittableRandom nodeRandom) {
+            this._sampleOffset = sampleOffset;
+            this._sampleCount = sampleCount;
+            this._histogram = histogram;
+
+            this._prevAttrIndex = prevAttrIndex;
+            this._prevAttrValue = prevAttrValue;
+            this._thisAttrIndex = -1;
+            this._predictLabel = -1;
+            this._parentPopularLabel = parentPopularLabel;
+
+            this._remainingAttrsCount = remainingAttrsCount;
+            this._availableAttrs = availableAttrs;
+            this._nodeRandom = nodeRandom;
+
+            this._nodeLayer = parentLayer;
+        }
+
+        /**
+         * Grow this node's branch: split it, then grow its children's,
+         * forking large children as tasks when training on a pool.
+         * @return the branch depth.
+         */
+        private int growBranch() {
+            if(split() == false)
+                return _branchDepth;
+
+            Integer[] childrenDepths = new Integer[_thisAttrOptions];
+            ArrayList<GrowTask> growTasks = new ArrayList<>();
+            for(int i = 0; i < _thisAttrOptions; i++){
+                // Fork large children as tasks, grow small ones inline
+                if(_pool != null && _childrenNodes[i]._sampleCount >= PARALLEL_THRESHOLD)
+                    growTasks.add(_childrenNodes[i].new GrowTask());
+                else
+                    childrenDepths[i] = _childrenNodes[i].growBranch();
+            }
+            for(GrowTask growTask : ForkJoinTask.invokeAll(growTasks)){
+                childrenDepths[growTask._node._prevAttrValue] = growTask.join();
+            }
+
+            /* Select the deepest branch then add 1 as this branch depth */
+            _branchDepth = Collections.max(Arrays.asList(childrenDepths)) + 1;
+            return _branchDepth;
+        }
+
+        /**
+         * Decide whether and how to split this node. If so, partition its samples and create its children,
+         * otherwise make it a leaf.
+         * @return whether the node is split.
+         */
+        private boolean split() {
+            final int[] sampleIndexes = _trainSampleIndexes;
+            int sampleSize = _sampleCount;
+            int sampleWeight = _histogram.getTotal();
+            boolean isParallel = _pool != null && sampleSize >= PARALLEL_THRESHOLD;
+
+            /* Find the most possible value, from the label totals inherited from the parent */
+            int[] possibleLabels = _histogram.getLabelCounts();
+            int mostPossibleLabel = -1;
+            int mostPossibleLabelCount = 0;
+            for(int j = 0; j < _labelOptions; j++){
+                if(possibleLabels[j] > mostPossibleLabelCount){
+                    mostPossibleLabelCount = possibleLabels[j];
+                    mostPossibleLabel = j + 1;
+                }
+            }
+
+
+            /* Decide whether or not to stop partitioning */
+            boolean shouldStop = false;
+            if(_remainingAttrsCount == 0){ // No remaining attributes for further partitioning.
+                shouldStop = true;
+            } else if(sampleSize == 0){ // No samples left.
+                shouldStop = true;
+            } else if(mostPossibleLabelCount == sampleWeight){ // All samples belong to the same class
+                shouldStop = true;
+            } else if(_nodeLayer >= _growthLimits.getMaxDepth()){ // Deep enough
+                shouldStop = true;
+            } else if(sampleWeight < _growthLimits.getMinSamplesSplit()){ // Too few samples to split
+                shouldStop = true;
+            }
+            if(shouldStop == true) {
+                becomeLeaf(mostPossibleLabel);
+                return false;
+            }
+
+
+            /* Decide on a partition attribute */
+            double giniIndex = getGiniIndex(possibleLabels, sampleWeight);
+            _thisAttrIndex = -1;
+            double maxGiniIndex = 0;
+            double[] reductionInImpurities = new double[_attrCount];
+
+            boolean[] availableAttrs = _availableAttrs.clone();
+            if(_isForestRI == true){
+                // Collect all candidates
+                int[] candidateAttrIndexes = new int[_remainingAttrsCount];
+                int candidateCount = 0;
+                for(int i = 0; i < _attrCount; i++){
+                    if(availableAttrs[i] == true){
+                        candidateAttrIndexes[candidateCount++] = i;
+                    }
+                }
+
+                // Shuffle and select top k (sqrt()), drawing only the first k positions
+                int candidateAttrsCount = (int) Math.sqrt(_remainingAttrsCount);
+                for(int i = 0; i < candidateAttrsCount; i++){
+                    int j = i + _nodeRandom.nextInt(candidateCount - i);
+                    int temp = candidateAttrIndexes[i];
+                    candidateAttrIndexes[i] = candidateAttrIndexes[j];
+                    candidateAttrIndexes[j] = temp;
+                }
+                for(int i = candidateAttrsCount; i < candidateCount; i++){
+                    availableAttrs[candidateAttrIndexes[i]] = false;
+                }
+                _thisAttrIndex = candidateAttrIndexes[0];
+            }
+
+            // Count the AVC-sets of the candidate attributes not derived by the parent, in one sweep
+            TrainingStats.PhaseEvent phase = TrainingStats.ENABLED ? _trainingStats.beginPhase() : null;
+            _histogram.countAttrs(_trainData, _trainSampleWeights, sampleIndexes, _sampleOffset, sampleSize, availableAttrs, isParallel);
+            if(TrainingStats.ENABLED){
+                _trainingStats.endPhase(phase, TrainingStats.PHASE_AVC, sampleSize);
+                phase = _trainingStats.beginPhase();
+            }
+
+            // Find the attribute with the maximum Gini index to split
+            int minSamplesLeaf = _growthLimits.getMinSamplesLeaf();
+            for(int i = 0; i < _attrCount; i++){
+                if(availableAttrs[i] == false)
+                    continue;
+                if(minSamplesLeaf > 1 && hasSmallChild(_histogram.getAVCSet(i), i, minSamplesLeaf)){
+                    if(_thisAttrIndex == i) // Drop the random forest's default choice too
+                        _thisAttrIndex = -1;
+                    continue;
+                }
+
+                /* Select current attribute if it has the max reduction in impurity */
+                reductionInImpurities[i] = giniIndex - getGiniIndexOnAttr(_histogram.getAVCSet(i), i, sampleWeight);
+                if(reductionInImpurities[i] >= maxGiniIndex){
+                    _thisAttrIndex = i;
+                    maxGiniIndex = reductionInImpurities[i];
+                }
+            }
+            if(TrainingStats.ENABLED)
+                _trainingStats.endPhase(phase, TrainingStats.PHASE_GINI, sampleSize);
+
+            /* Stop if no attribute is allowed, decreases impurity enough, or fits in the node count */
+            if(_thisAttrIndex == -1
+                    || (_growthLimits.getMinImpurityDecrease() > 0
+                        && maxGiniIndex * sampleWeight / _trainSampleWeight < _growthLimits.getMinImpurityDecrease())
+                    || (_growthLimits.isNodeCountLimited()
+                        && _grownNodeCount + _attrOptions[_thisAttrIndex] > _growthLimits.getMaxNodes())){
+                becomeLeaf(mostPossibleLabel);
+                return false;
+            }
+            _thisAttrOptions = _attrOptions[_thisAttrIndex];
+            if(_growthLimits.isNodeCountLimited())
+                _grownNodeCount += _thisAttrOptions;
+
+
+            /* Partition this node's range of sample indexes in place by the decided attribute,
+               so that each child owns a contiguous sub-range */
+            if(TrainingStats.ENABLED)
+                phase = _trainingStats.beginPhase();
+            Column partitionColumn = _trainData.getAttrColumn(_thisAttrIndex);
+            int[] childrenOffsets = new int[_thisAttrOptions + 1];
+            for(int i = _sampleOffset; i < _sampleOffset + sampleSize; i++){
+                childrenOffsets[partitionColumn.get(sampleIndexes[i]) + 1]++;
+            }
+            childrenOffsets[0] = _sampleOffset;
+            for(int i = 0; i < _thisAttrOptions; i++){
+                childrenOffsets[i + 1] += childrenOffsets[i];
+            }
+            partitionInPlace(sampleIndexes, partitionColumn, childrenOffsets);
+            if(TrainingStats.ENABLED)
+                _trainingStats.endPhase(phase, TrainingStats.PHASE_PARTITION, sampleSize);
+
+            /* Grow a decision tree for each value's child */
+            boolean[] newAvailableAttrs = _availableAttrs.clone();
+            newAvailableAttrs[_thisAttrIndex] = false;
+
+            /* Hand each child its label totals, being this node's AVC-set row of its value */
+            AVCHistogram[] childrenHistograms = new AVCHistogram[_thisAttrOptions];
+            int largestChild = 0;
+            for(int i = 0; i < _thisAttrOptions; i++){
+                childrenHistograms[i] = new AVCHistogram(_labelOptions, _attrOptions, _histogram.getChildLabelCounts(_thisAttrIndex, i));
+                if(childrenOffsets[i + 1] - childrenOffsets[i] > childrenOffsets[largestChild + 1] - childrenOffsets[largestChild])
+                    largestChild = i;
+            }
+
+            /* If the largest child is to be split on all its remaining attributes too, count the AVC-sets of its siblings
+               that are to be split as well, as they would count them anyway; if these are all its siblings,
+               derive its own AVC-sets as this node's minus theirs */
+            boolean mayChildrenSplit = _isForestRI == false && _remainingAttrsCount > 1
+                    && _nodeLayer + 1 < _growthLimits.getMaxDepth();
+            if(mayChildrenSplit && maySplit(childrenHistograms[largestChild])){
+                if(TrainingStats.ENABLED)
+                    phase = _trainingStats.beginPhase();
+                boolean areSiblingsCounted = true;
+                for(int i = 0; i < _thisAttrOptions; i++){
+                    if(i == largestChild)
+                        continue;
+                    if(maySplit(childrenHistograms[i]) == false){
+                        areSiblingsCounted = false;
+                        continue;
+                    }
+                    int childSize = childrenOffsets[i + 1] - childrenOffsets[i];
+                    childrenHistograms[i].countAttrs(_trainData, _trainSampleWeights, sampleIndexes, childrenOffsets[i], childSize,
+                            newAvailableAttrs, _pool != null && childSize >= PARALLEL_THRESHOLD);
+                }
+                if(areSiblingsCounted)
+                    childrenHistograms[largestChild].subtract(_histogram, childrenHistograms, newAvailableAttrs);
+                if(TrainingStats.ENABLED)
+                    _trainingStats.endPhase(phase, TrainingStats.PHASE_AVC, 0);
+            }
+            _histogram = null;
+
+            _childrenNodes = new DTNode[_thisAttrOptions];
+            for(int i = 0; i < _thisAttrOptions; i++){
+                // Each child draws from its own split of this node's random, so the tree does not depend on growth order
+                SplittableRandom childRandom = _nodeRandom != null ? _nodeRandom.split() : null;
+                _childrenNodes[i] = new DTNode(childrenOffsets[i], childrenOffsets[i + 1] - childrenOffsets[i], childrenHistograms[i], _nodeLayer + 1, _thisAttrIndex, i, mostPossibleLabel, _remainingAttrsCount-1, newAvailableAttrs, childRandom);
+            }
+            releaseTrainingState();
+            return true;
+        }
+
+        /**
+         * Make this node a leaf predicting its most popular label, or its parent's if it has no sample.
+         */
+        private void becomeLeaf(final int mostPossibleLabel){
+            _thisAttrIndex = -1;
+            if(mostPossibleLabel != -1) {
+                _predictLabel = mostPossibleLabel;
+            } else {
+                _predictLabel = _parentPopularLabel;
+            }
+            _branchDepth = 0;
+            releaseTrainingState();
+        }
+
+        /**
+         * @return whether a child of the given label totals is split rather than made a leaf by its samples,
+         *         as judged by split(): some samples, at least minSamplesSplit of them, not all of the same class.
+         */
+        private boolean maySplit(final AVCHistogram histogram){
+            int weight = histogram.getTotal();
+            if(weight == 0 || weight < _growthLimits.getMinSamplesSplit())
+                return false;
+            for(int labelCount : histogram.getLabelCounts()){
+                if(labelCount == weight)
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return whether splitting on an attribute would leave some non-empty child fewer than minSamplesLeaf samples.
+         */
+        private boolean hasSmallChild(final int[] avcSet, final int attrIndex, final int minSamplesLeaf){
+            for(int v = 0; v < _attrOptions[attrIndex]; v++){
+                int childWeight = 0;
+                for(int j = 0; j < _labelOptions; j++)
+                    childWeight += avcSet[v * _labelOptions + j];
+                if(childWeight > 0 && childWeight < minSamplesLeaf)
+                    return true;
+            }
+            return false;
+        }
+
+
+        /**
+         * Drop the state only needed while growing this node.
+         */
+        private void releaseTrainingState(){
+            _histogram = null;
+            _availableAttrs = null;
+            _nodeRandom = null;
+        }
+
+        /*
+         * A fork-join task growing this node's branch.
+         */
+        private class GrowTask extends RecursiveTask<Integer> {
+            private static final long serialVersionUID = 1L;
+
+            private final DTNode _node = DTNode.this;
+
+            @Override
+            protected Integer compute() {
+                return _node.growBranch();
+            }
+        }
+
+    }
+
+    /**
+     * Setters
+     */
+    /**
+     * @param growthLimits  Stopping criteria of the next training, shared rather than copied.
+     */
+    public void setGrowthLimits(final GrowthLimits growthLimits) {
+        this._growthLimits = growthLimits;
+    }
+
+    /**
+     * Getters
+     */
+    public int getLabelOptions() {
+        return _labelOptions;
+    }
+    public int getAttrCount() {
+        return _attrCount;
+    }
+    public int[] getAttrOptions() {
+        return _attrOptions;
+    }
+    public int getNodeCount() {
+        return _nodeCount;
+    }
+    public int getTreeDepth() {
+        return _treeDepth;
+    }
+    /**
+     * @return the compiled node arrays, shared rather than copied; null until trained.
+     */
+    public int[] getSplitAttrs() {
+        return _splitAttrs;
+    }
+    public int[] getChildBases() {
+        return _childBases;
+    }
+    public int[] getLeafLabels() {
+        return _leafLabels;
+    }
+    /**
+     * @return the stats of the last training, or null unless TrainingStats.ENABLED.
+     */
+    public TrainingStats getTrainingStats() {
+        return _trainingStats;
+    }
+}
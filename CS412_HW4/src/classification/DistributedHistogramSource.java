@@ -0,0 +1,174 @@
+package classification;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The coordinator of distributed training: histograms of a LevelWiseTree's open nodes summed up over
+ * HistogramWorkers, each counting its own shard of the training data.
+ *
+ * Every level, the tree's routing is sent to all workers before any reply is read, so that the workers count
+ * at the same time; the sums are then the same histograms a single pass over all shards would count.
+ * Workers are reached through Transports, so local worker processes and remote hosts are alike.
+ */
+public class DistributedHistogramSource implements HistogramSource, Closeable {
+    private final List<Transport> _transports;
+    private final DataInputStream[] _inputs;
+    private final DataOutputStream[] _outputs;
+
+    // Dimension, merged over shards once scanned
+    private long _sampleSize;
+    private int _labelOptions;
+    private int[] _attrOptions;
+
+    /**
+     * Constructor
+     * @param transports    A transport per worker, closed along with this source.
+     */
+    public DistributedHistogramSource(final List<Transport> transports) throws IOException{
+        if(transports.isEmpty())
+            throw new IllegalArgumentException("At least a worker is needed!");
+
+        this._transports = new ArrayList<>(transports);
+        this._inputs = new DataInputStream[transports.size()];
+        this._outputs = new DataOutputStream[transports.size()];
+        for(int w = 0; w < transports.size(); w++){
+            _inputs[w] = new DataInputStream(new BufferedInputStream(transports.get(w).getInputStream()));
+            _outputs[w] = new DataOutputStream(new BufferedOutputStream(transports.get(w).getOutputStream()));
+        }
+    }
+
+    /**
+     * Launch worker JVMs on this machine, each owning a shard of the training file, connected by pipes.
+     */
+    public static DistributedHistogramSource launchLocal(final File trainFile, final int workerCount) throws IOException{
+        if(workerCount < 1)
+            throw new IllegalArgumentException("At least a worker is needed!");
+
+        List<Transport> transports = new ArrayList<>(workerCount);
+        try {
+            for(int w = 0; w < workerCount; w++)
+                transports.add(HistogramWorker.launch(trainFile, w, workerCount));
+            return new DistributedHistogramSource(transports);
+        } catch (IOException e) {
+            for(Transport transport : transports)
+                closeQuietly(transport);
+            throw e;
+        }
+    }
+
+    /**
+     * Ask every worker for the dimension of its shard, and merge them.
+     */
+    public void scanDimension() throws IOException{
+        for(DataOutputStream output : _outputs){
+            output.writeInt(HistogramWorker.COMMAND_DIMENSION);
+            output.flush();
+        }
+
+        long sampleSize = 0;
+        int labelOptions = 0;
+        int[] attrOptions = new int[0];
+        for(int w = 0; w < _inputs.length; w++){
+            readStatus(w);
+            sampleSize += _inputs[w].readInt();
+            labelOptions = Math.max(labelOptions, _inputs[w].readInt());
+            int[] shardAttrOptions = HistogramWorker.readInts(_inputs[w], _inputs[w].readInt());
+            if(shardAttrOptions.length > attrOptions.length){
+                int attrCount = attrOptions.length;
+                attrOptions = Arrays.copyOf(attrOptions, shardAttrOptions.length);
+                Arrays.fill(attrOptions, attrCount, attrOptions.length, 1);
+            }
+            for(int i = 0; i < shardAttrOptions.length; i++)
+                attrOptions[i] = Math.max(attrOptions[i], shardAttrOptions[i]);
+        }
+
+        _sampleSize = sampleSize;
+        _labelOptions = labelOptions;
+        _attrOptions = attrOptions;
+    }
+
+    @Override
+    public int[][] countFrontier(final LevelWiseTree tree) throws IOException{
+        /* Broadcast the routing of the tree's current level */
+        int nodeCount = tree.getNodeCount();
+        int[] frontier = tree.getFrontier();
+        for(DataOutputStream output : _outputs){
+            output.writeInt(HistogramWorker.COMMAND_COUNT);
+            output.writeInt(tree.getLabelOptions());
+            output.writeInt(tree.getAttrCount());
+            HistogramWorker.writeInts(output, tree.getAttrOptions(), tree.getAttrCount());
+            output.writeInt(nodeCount);
+            HistogramWorker.writeInts(output, tree.getSplitAttrs(), nodeCount);
+            HistogramWorker.writeInts(output, tree.getChildBases(), nodeCount);
+            output.writeInt(frontier.length);
+            HistogramWorker.writeInts(output, frontier, frontier.length);
+            output.flush();
+        }
+
+        /* Sum up the workers' histograms */
+        int[][] histograms = tree.newFrontierHistograms();
+        for(int w = 0; w < _inputs.length; w++){
+            readStatus(w);
+            for(int[] histogram : histograms)
+                HistogramWorker.addInts(_inputs[w], histogram);
+        }
+        return histograms;
+    }
+
+    private void readStatus(final int worker) throws IOException{
+        int status = _inputs[worker].readInt();
+        if(status == HistogramWorker.STATUS_ERROR)
+            throw new IOException("Worker #" + worker + " failed: " + _inputs[worker].readUTF());
+        if(status != HistogramWorker.STATUS_OK)
+            throw new IOException("Worker #" + worker + " replied with unknown status " + status + "!");
+    }
+
+    /**
+     * End every worker's session and close the transports.
+     */
+    @Override
+    public void close() throws IOException{
+        for(int w = 0; w < _outputs.length; w++){
+            try {
+                _outputs[w].writeInt(HistogramWorker.COMMAND_CLOSE);
+                _outputs[w].flush();
+            } catch (IOException e) {
+                // The worker may be gone already
+            }
+            closeQuietly(_transports.get(w));
+        }
+    }
+
+    private static void closeQuietly(final Transport transport){
+        try {
+            transport.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close a worker's transport: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Getters, valid once scanDimension() is done
+     */
+    public int getWorkerCount() {
+        return _transports.size();
+    }
+    public long getSampleSize() {
+        return _sampleSize;
+    }
+    public int getLabelOptions() {
+        return _labelOptions;
+    }
+    public int[] getAttrOptions() {
+        return _attrOptions;
+    }
+}
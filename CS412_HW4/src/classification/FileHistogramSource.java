@@ -0,0 +1,77 @@
+package classification;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Training samples of a data file, read with a sequential pass per request and never held in memory.
+ */
+public class FileHistogramSource implements HistogramSource {
+    private final File _file;
+
+    // Dimension, known once scanned
+    private int _labelOptions;
+    private int[] _attrOptions;
+
+    /**
+     * Constructor
+     */
+    public FileHistogramSource(final File file){
+        this._file = file;
+    }
+
+    /**
+     * Scan the file once for the dimension of its samples.
+     */
+    public void scanDimension() throws IOException{
+        int labelOptions = 0;
+        int[] maxAttrValues = new int[0];
+        try(SampleReader sampleReader = new SampleReader(new FileInputStream(_file))){
+            while(sampleReader.next()){
+                labelOptions = Math.max(labelOptions, sampleReader.getLabel());
+                int rowAttrCount = sampleReader.getRowAttrCount();
+                if(rowAttrCount > maxAttrValues.length)
+                    maxAttrValues = Arrays.copyOf(maxAttrValues, rowAttrCount);
+                int[] attrs = sampleReader.getAttrs();
+                for(int i = 0; i < rowAttrCount; i++)
+                    maxAttrValues[i] = Math.max(maxAttrValues[i], attrs[i]);
+            }
+        }
+
+        _labelOptions = labelOptions;
+        _attrOptions = new int[maxAttrValues.length];
+        for(int i = 0; i < maxAttrValues.length; i++)
+            _attrOptions[i] = maxAttrValues[i] + 1;
+    }
+
+    @Override
+    public int[][] countFrontier(final LevelWiseTree tree) throws IOException{
+        int attrCount = tree.getAttrCount();
+        int[][] histograms = tree.newFrontierHistograms();
+        int[] sampleAttr = new int[attrCount];
+        try(SampleReader sampleReader = new SampleReader(new FileInputStream(_file))){
+            while(sampleReader.next()){
+                int rowAttrCount = sampleReader.getRowAttrCount();
+                if(rowAttrCount > attrCount)
+                    throw new IOException("Sample has more attributes than the tree!");
+                Arrays.fill(sampleAttr, rowAttrCount, attrCount, 0);
+                System.arraycopy(sampleReader.getAttrs(), 0, sampleAttr, 0, rowAttrCount);
+
+                tree.addSample(histograms, sampleReader.getLabel(), sampleAttr);
+            }
+        }
+        return histograms;
+    }
+
+    /**
+     * Getters, valid once scanDimension() is done
+     */
+    public int getLabelOptions() {
+        return _labelOptions;
+    }
+    public int[] getAttrOptions() {
+        return _attrOptions;
+    }
+}
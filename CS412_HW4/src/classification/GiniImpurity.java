@@ -0,0 +1,112 @@
+package classification;
+
+/**
+ * Gini index computed from integer label counts:
+ *   gini(counts) = 1 - sum((c / n)^2)
+ *   gini(split)  = sum over values v of gini(counts of v) * n_v / n
+ * with the same floating-point operations in the same order as the original per-count formula,
+ * so that attributes tying up to rounding are still told apart, and trees come out the same.
+ *
+ * Split Gini indexes are computed by the Vector API, several attribute values at a time each in its own lane,
+ * when the jdk.incubator.vector module is present (java --add-modules jdk.incubator.vector)
+ * and VectorGiniKernel is on the class path and finds this machine's vectors wide enough;
+ * by scalar loops otherwise, or with -Dclassification.vectorGini=false.
+ * A lane follows its value's labels in order, so both kernels compute identical Gini indexes.
+ */
+public class GiniImpurity {
+    /**
+     * Computation of split Gini indexes.
+     */
+    interface GiniKernel {
+        /**
+         * @see GiniImpurity#giniIndexOnAttr(int[], int, int, int)
+         */
+        double giniIndexOnAttr(final int[] avcSet, final int attrOptions, final int labelOptions, final int sampleWeight);
+    }
+
+    static final GiniKernel SCALAR_KERNEL = new GiniKernel() {
+        @Override
+        public double giniIndexOnAttr(final int[] avcSet, final int attrOptions, final int labelOptions, final int sampleWeight) {
+            double sampleSize = sampleWeight;
+            double giniIndex = 0;
+            for(int v = 0; v < attrOptions; v++){
+                int offset = v * labelOptions;
+                double valueWeight = 0;
+                for(int j = offset; j < offset + labelOptions; j++)
+                    valueWeight += avcSet[j];
+                if(valueWeight > 0)
+                    giniIndex += giniIndex(avcSet, offset, labelOptions, valueWeight) * valueWeight / sampleSize;
+            }
+            return giniIndex;
+        }
+    };
+
+    private static final GiniKernel KERNEL = selectKernel();
+
+    private GiniImpurity(){
+    }
+
+    /**
+     * Gini index of samples from their label counts.
+     * @param labelCounts   Counts of which [offset, offset + labelOptions) are read.
+     * @param sampleWeight  Sum of the counts.
+     */
+    public static double giniIndex(final int[] labelCounts, final int offset, final int labelOptions, final int sampleWeight){
+        if(sampleWeight == 0)
+            return 1;
+        return giniIndex(labelCounts, offset, labelOptions, (double) sampleWeight);
+    }
+
+    /**
+     * Gini index of samples split by an attribute's values, weighting each value's Gini index by its samples.
+     * @param avcSet    Flat label counts of each value, those of value v at [v * labelOptions, (v + 1) * labelOptions).
+     * @param sampleWeight  Sum of all the counts.
+     */
+    public static double giniIndexOnAttr(final int[] avcSet, final int attrOptions, final int labelOptions, final int sampleWeight){
+        return KERNEL.giniIndexOnAttr(avcSet, attrOptions, labelOptions, sampleWeight);
+    }
+
+    /**
+     * Getters
+     */
+    /**
+     * @return whether split Gini indexes are computed by the Vector API.
+     */
+    public static boolean isVectorized() {
+        return KERNEL != SCALAR_KERNEL;
+    }
+
+    /**
+     * Load the Vector API kernel, if VectorGiniKernel.isSupported() on this machine.
+     * @return the kernel, or null if the jdk.incubator.vector module or the kernel's class is missing,
+     *         or if this machine's vectors are too narrow for it.
+     */
+    static GiniKernel loadVectorKernel(){
+        if(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() == false)
+            return null;
+        try {
+            Class<?> kernelClass = Class.forName("classification.VectorGiniKernel");
+            if((Boolean) kernelClass.getDeclaredMethod("isSupported").invoke(null) == false)
+                return null;
+            return (GiniKernel) kernelClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static GiniKernel selectKernel(){
+        if(Boolean.parseBoolean(System.getProperty("classification.vectorGini", "true")) == false)
+            return SCALAR_KERNEL;
+        GiniKernel vectorKernel = loadVectorKernel();
+        return vectorKernel != null ? vectorKernel : SCALAR_KERNEL;
+    }
+
+    private static double giniIndex(final int[] labelCounts, final int offset, final int labelOptions, final double sampleSize){
+        double giniIndex = 1;
+        for(int j = offset; j < offset + labelOptions; j++){
+            double probability = labelCounts[j] / sampleSize;
+            giniIndex -= probability * probability;
+        }
+        return giniIndex;
+    }
+}
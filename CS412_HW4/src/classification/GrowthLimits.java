@@ -0,0 +1,85 @@
+package classification;
+
+/**
+ * Stopping criteria of decision tree growth, beyond running out of attributes, samples or impurity.
+ * By default nothing is limited, and trees grow as if there were no limits at all.
+ *
+ * Sample counts are weighted, so a sample drawn several times by a bootstrap counts that many times.
+ */
+public class GrowthLimits {
+    // Limits
+    private int _maxDepth = Integer.MAX_VALUE;
+    private int _minSamplesSplit = 2;
+    private int _minSamplesLeaf = 1;
+    private double _minImpurityDecrease = 0;
+    private int _maxNodes = Integer.MAX_VALUE;
+
+    /**
+     * Setters
+     */
+    /**
+     * @param maxDepth  Depth beyond which no node is split, the root being at depth 0.
+     */
+    public void setMaxDepth(final int maxDepth) {
+        if(maxDepth < 0)
+            throw new IllegalArgumentException("Max depth must not be negative!");
+        this._maxDepth = maxDepth;
+    }
+    /**
+     * @param minSamplesSplit   Fewest samples a node needs to be split.
+     */
+    public void setMinSamplesSplit(final int minSamplesSplit) {
+        if(minSamplesSplit < 2)
+            throw new IllegalArgumentException("Min samples to split must be at least 2!");
+        this._minSamplesSplit = minSamplesSplit;
+    }
+    /**
+     * @param minSamplesLeaf    Fewest samples of any non-empty child of a split;
+     *                          attributes that would leave fewer to some child are not split on.
+     */
+    public void setMinSamplesLeaf(final int minSamplesLeaf) {
+        if(minSamplesLeaf < 1)
+            throw new IllegalArgumentException("Min samples per leaf must be positive!");
+        this._minSamplesLeaf = minSamplesLeaf;
+    }
+    /**
+     * @param minImpurityDecrease   Least decrease of Gini index for a node to be split,
+     *                              weighted by the node's share of the training samples.
+     */
+    public void setMinImpurityDecrease(final double minImpurityDecrease) {
+        if(minImpurityDecrease < 0 || Double.isNaN(minImpurityDecrease))
+            throw new IllegalArgumentException("Min impurity decrease must not be negative!");
+        this._minImpurityDecrease = minImpurityDecrease;
+    }
+    /**
+     * @param maxNodes  Most nodes of a tree. A tree so limited is grown breadth-first and sequentially,
+     *                  so that the nodes kept do not depend on the order tasks happen to run in.
+     */
+    public void setMaxNodes(final int maxNodes) {
+        if(maxNodes < 1)
+            throw new IllegalArgumentException("Max nodes must be positive!");
+        this._maxNodes = maxNodes;
+    }
+
+    /**
+     * Getters
+     */
+    public int getMaxDepth() {
+        return _maxDepth;
+    }
+    public int getMinSamplesSplit() {
+        return _minSamplesSplit;
+    }
+    public int getMinSamplesLeaf() {
+        return _minSamplesLeaf;
+    }
+    public double getMinImpurityDecrease() {
+        return _minImpurityDecrease;
+    }
+    public int getMaxNodes() {
+        return _maxNodes;
+    }
+    public boolean isNodeCountLimited() {
+        return _maxNodes != Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,16 @@
+package classification;
+
+import java.io.IOException;
+
+/**
+ * Training samples that LevelWiseTree never holds, only asking for the histograms of its open nodes,
+ * e.g. by scanning a file or by summing up the histograms counted by workers over shards of the data.
+ */
+public interface HistogramSource {
+    /**
+     * Count the histogram of each open node of a partially grown tree, usually in one pass over the samples,
+     * routing each sample with LevelWiseTree.addSample().
+     * @return the histograms, indexed by frontier position, each of LevelWiseTree.getHistogramSize() ints for its frontier position.
+     */
+    int[][] countFrontier(final LevelWiseTree tree) throws IOException;
+}
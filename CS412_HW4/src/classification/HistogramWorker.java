@@ -0,0 +1,245 @@
+package classification;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A worker of distributed training, owning a horizontal shard of a training file:
+ *   java classification.HistogramWorker <train file> <shard index> <shard count> [port [bind address]]
+ *
+ * The shard is the shard index-th of shard count newline-aligned byte ranges of the file, parsed once and kept.
+ * For each level of a LevelWiseTree, the coordinator (DistributedHistogramSource) sends the tree's routing,
+ * and the worker answers with the histograms of the open nodes over its own samples.
+ * It serves one coordinator over its standard input and output, or over a socket if a port is given.
+ * The socket listens on the loopback interface unless a bind address is given, e.g. 0.0.0.0 for coordinators
+ * on other hosts; the protocol is neither authenticated nor encrypted, so only open it to a trusted network.
+ *
+ * Messages are big-endian ints: a command, then its arguments.
+ *   COMMAND_DIMENSION                      -> STATUS_OK, sampleSize, labelOptions, attrCount, attrOptions...
+ *   COMMAND_COUNT labelOptions attrCount attrOptions... nodeCount splitAttrs... childBases... frontierSize frontier...
+ *                                          -> STATUS_OK, histograms of the frontier...
+ *   COMMAND_CLOSE, or the end of input, ends the session.
+ * A failed command is answered with STATUS_ERROR and a UTF message, then the session ends.
+ */
+public class HistogramWorker {
+    public static void main(String[] args) throws Exception{
+        if(args.length < 3 || args.length > 5){
+            System.err.println("Usage: java classification.HistogramWorker <train file> <shard index> <shard count> [port [bind address]]");
+            System.exit(1);
+        }
+        File trainFile = new File(args[0]);
+        int shardIndex = Integer.parseInt(args[1]);
+        int shardCount = Integer.parseInt(args[2]);
+        if(shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount)
+            throw new IllegalArgumentException("Shard index should be within [0, shard count)!");
+
+        HistogramWorker histogramWorker = new HistogramWorker(trainFile, shardIndex, shardCount);
+        histogramWorker.loadShard();
+
+        if(args.length >= 4){
+            InetAddress bindAddress = InetAddress.getByName(args.length == 5 ? args[4] : null); // Loopback by default
+            try(ServerSocket serverSocket = new ServerSocket(Integer.parseInt(args[3]), 1, bindAddress)){
+                try(Socket socket = serverSocket.accept()){
+                    socket.setTcpNoDelay(true);
+                    histogramWorker.serve(socket.getInputStream(), socket.getOutputStream());
+                }
+            }
+        } else {
+            // Standard output carries the protocol, so anything else printed goes to standard error
+            OutputStream output = new FileOutputStream(FileDescriptor.out);
+            System.setOut(System.err);
+            histogramWorker.serve(System.in, output);
+        }
+    }
+
+    /* Commands */
+    static final int COMMAND_CLOSE = 0;
+    static final int COMMAND_DIMENSION = 1;
+    static final int COMMAND_COUNT = 2;
+
+    /* Statuses of replies */
+    static final int STATUS_OK = 0;
+    static final int STATUS_ERROR = 1;
+
+    /* Ints moved per bulk read or write */
+    private static final int INT_BLOCK_SIZE = 1 << 14;
+
+    // Shard
+    private final File _trainFile;
+    private final int _shardIndex;
+    private final int _shardCount;
+    private Dataset _shard;
+
+    // Tree mirrored from the coordinator, kept across levels
+    private LevelWiseTree _levelWiseTree;
+
+    /**
+     * Constructor
+     */
+    public HistogramWorker(final File trainFile, final int shardIndex, final int shardCount){
+        this._trainFile = trainFile;
+        this._shardIndex = shardIndex;
+        this._shardCount = shardCount;
+    }
+
+    /**
+     * Launch a worker JVM on a shard of a training file, with this JVM's classpath.
+     */
+    public static PipeTransport launch(final File trainFile, final int shardIndex, final int shardCount) throws IOException{
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(HistogramWorker.class.getName());
+        command.add(trainFile.getPath());
+        command.add(Integer.toString(shardIndex));
+        command.add(Integer.toString(shardCount));
+        return PipeTransport.launch(command);
+    }
+
+    /**
+     * Parse the worker's shard of the training file.
+     */
+    public void loadShard() throws IOException{
+        DatasetBuilder datasetBuilder;
+        try(FileChannel channel = FileChannel.open(_trainFile.toPath(), StandardOpenOption.READ)){
+            /* Every worker splits the file alike, so the shards cover it without overlapping */
+            long[] boundaries = DatasetLoader.splitLines(channel, _shardCount, 1);
+            if(_shardIndex < boundaries.length - 1)
+                datasetBuilder = DatasetLoader.parseChunk(channel, boundaries[_shardIndex], boundaries[_shardIndex + 1]);
+            else
+                datasetBuilder = new DatasetBuilder();
+        }
+        _shard = datasetBuilder.build(datasetBuilder.getLabelOptions(), datasetBuilder.getAttrCount());
+    }
+
+    /**
+     * Answer a coordinator's commands until it closes the session.
+     */
+    public void serve(final InputStream inputStream, final OutputStream outputStream) throws IOException{
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        while(true){
+            int command;
+            try {
+                command = input.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+
+            try {
+                switch(command){
+                    case COMMAND_CLOSE:
+                        return;
+                    case COMMAND_DIMENSION:
+                        output.writeInt(STATUS_OK);
+                        output.writeInt(_shard.getSampleSize());
+                        output.writeInt(_shard.getLabelOptions());
+                        output.writeInt(_shard.getAttrCount());
+                        writeInts(output, _shard.getAttrOptions(), _shard.getAttrCount());
+                        break;
+                    case COMMAND_COUNT:
+                        int[][] histograms = countFrontier(input);
+                        output.writeInt(STATUS_OK);
+                        for(int[] histogram : histograms)
+                            writeInts(output, histogram, histogram.length);
+                        break;
+                    default:
+                        throw new IOException("Unknown command " + command + "!");
+                }
+                output.flush();
+            } catch (IOException | RuntimeException e) {
+                /* The rest of the request can not be told apart from the next one, so give up the session */
+                output.writeInt(STATUS_ERROR);
+                output.writeUTF(String.valueOf(e.getMessage()));
+                output.flush();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read a tree's routing and count the histograms of its open nodes over the shard.
+     */
+    private int[][] countFrontier(final DataInputStream input) throws IOException{
+        int labelOptions = input.readInt();
+        int[] attrOptions = readInts(input, input.readInt());
+        int nodeCount = input.readInt();
+        int[] splitAttrs = readInts(input, nodeCount);
+        int[] childBases = readInts(input, nodeCount);
+        int[] frontier = readInts(input, input.readInt());
+
+        if(_levelWiseTree == null || _levelWiseTree.getLabelOptions() != labelOptions
+                || Arrays.equals(_levelWiseTree.getAttrOptions(), attrOptions) == false)
+            _levelWiseTree = new LevelWiseTree(labelOptions, attrOptions);
+        _levelWiseTree.setFrontier(nodeCount, splitAttrs, childBases, frontier);
+        if(_shard.getAttrCount() > attrOptions.length)
+            throw new IOException("Shard has more attributes than the tree!");
+
+        int[][] histograms = _levelWiseTree.newFrontierHistograms();
+        int[] sampleAttr = new int[attrOptions.length];
+        for(int i = 0; i < _shard.getSampleSize(); i++){
+            _shard.getSample(i, sampleAttr);
+            _levelWiseTree.addSample(histograms, _shard.getLabel(i), sampleAttr);
+        }
+        return histograms;
+    }
+
+    /**
+     * Write the first length ints of an array in bulk.
+     */
+    static void writeInts(final DataOutputStream output, final int[] values, final int length) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, INT_BLOCK_SIZE) * 4);
+        IntBuffer intBuffer = buffer.asIntBuffer();
+        for(int offset = 0; offset < length; offset += INT_BLOCK_SIZE){
+            int count = Math.min(INT_BLOCK_SIZE, length - offset);
+            intBuffer.clear();
+            intBuffer.put(values, offset, count);
+            output.write(buffer.array(), 0, count * 4);
+        }
+    }
+
+    /**
+     * Read length ints in bulk.
+     */
+    static int[] readInts(final DataInputStream input, final int length) throws IOException{
+        if(length < 0)
+            throw new IOException("Negative array length!");
+        int[] values = new int[length];
+        addInts(input, values);
+        return values;
+    }
+
+    /**
+     * Read as many ints as an array holds in bulk, adding each to the array's.
+     */
+    static void addInts(final DataInputStream input, final int[] sums) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(sums.length, INT_BLOCK_SIZE) * 4);
+        IntBuffer intBuffer = buffer.asIntBuffer();
+        for(int offset = 0; offset < sums.length; offset += INT_BLOCK_SIZE){
+            int count = Math.min(INT_BLOCK_SIZE, sums.length - offset);
+            input.readFully(buffer.array(), 0, count * 4);
+            for(int i = 0; i < count; i++)
+                sums[offset + i] += intBuffer.get(i);
+        }
+    }
+}
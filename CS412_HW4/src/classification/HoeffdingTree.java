@@ -0,0 +1,320 @@
+package classification;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A decision tree learnt incrementally from an unbounded stream of samples (VFDT):
+ * each leaf keeps the AVC-sets of the samples reaching it, and is split on the attribute of the best Gini index
+ * once the Hoeffding bound shows, with confidence 1 - delta, that it beats the runner-up.
+ * Memory is bounded by the tree's size, as only leaves keep counts and no sample is kept.
+ *
+ * Nodes are laid out as in DecisionTreeKernel: a split node's children are contiguous, appended when it is split.
+ * The tree can predict at any point of the stream; learning and predicting are synchronized,
+ * so samples may be learnt and predicted from different threads.
+ */
+public class HoeffdingTree implements Predictor {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Configuration
+    private double _delta = 1e-7;       // Probability of splitting on a worse attribute than the best one
+    private double _tieThreshold = 0.05; // Bound under which the two best attributes are deemed tied, so either will do
+    private int _gracePeriod = 200;     // Samples a leaf learns between two split attempts
+    private GrowthLimits _growthLimits = new GrowthLimits();
+
+    // Metadata
+    private final int _labelOptions;
+    private final int _attrCount;
+    private final int[] _attrOptions;
+
+    // Classifier
+    private int _nodeCount;
+    private int _treeDepth;
+    private int[] _splitAttrs;  // Attribute a node splits on, or -1 for a leaf
+    private int[] _childBases;  // Node of a split node's first child, its children being contiguous
+    private int[] _leafLabels;  // Label predicted by a leaf
+    private int[] _nodeDepths;
+    private Leaf[] _leaves;     // Counts of each leaf, null for split nodes
+    private long _learntSampleCount;
+
+    /**
+     * Constructor of an empty tree, predicting label 1 until it learns any sample.
+     * As the stream is unbounded, the dimension of its samples must be known up front.
+     */
+    public HoeffdingTree(final int labelOptions, final int[] attrOptions){
+        if(labelOptions < 2 || attrOptions.length < 1)
+            throw new IllegalArgumentException("Dimension of samples is too small!");
+
+        this._labelOptions = labelOptions;
+        this._attrCount = attrOptions.length;
+        this._attrOptions = attrOptions.clone();
+
+        this._splitAttrs = new int[INITIAL_CAPACITY];
+        this._childBases = new int[INITIAL_CAPACITY];
+        this._leafLabels = new int[INITIAL_CAPACITY];
+        this._nodeDepths = new int[INITIAL_CAPACITY];
+        this._leaves = new Leaf[INITIAL_CAPACITY];
+
+        boolean[] availableAttrs = new boolean[_attrCount];
+        Arrays.fill(availableAttrs, true);
+        addLeaf(0, 1, availableAttrs);
+    }
+
+    /**
+     * Learn every sample of a stream until it ends, e.g. a SampleReader over standard input.
+     * @return number of samples learnt.
+     */
+    public long learn(final SampleReader sampleReader) throws IOException{
+        long count = 0;
+        int[] sampleAttr = new int[_attrCount];
+        while(sampleReader.next()){
+            int rowAttrCount = sampleReader.getRowAttrCount();
+            if(rowAttrCount > _attrCount)
+                throw new IllegalArgumentException("Sample has more attributes than the tree!");
+            Arrays.fill(sampleAttr, 0);
+            System.arraycopy(sampleReader.getAttrs(), 0, sampleAttr, 0, rowAttrCount);
+
+            learnSample(sampleReader.getLabel(), sampleAttr);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Learn a sample: count it at the leaf it reaches, then try to split that leaf if its grace period is over.
+     */
+    public synchronized void learnSample(final int label, final int[] sampleAttr){
+        if(label < 1 || label > _labelOptions)
+            throw new IllegalArgumentException("Sample's label is out of the tree's range!");
+        for(int i = 0; i < _attrCount; i++){
+            if(sampleAttr[i] < 0 || sampleAttr[i] >= _attrOptions[i])
+                throw new IllegalArgumentException("Sample's attribute #" + i + " is out of the tree's range!");
+        }
+
+        int node = findLeaf(sampleAttr);
+        Leaf leaf = _leaves[node];
+        leaf.add(label, sampleAttr);
+        _learntSampleCount++;
+
+        /* Keep the leaf's prediction as its majority label */
+        if(leaf._labelCounts[label - 1] > leaf._labelCounts[_leafLabels[node] - 1])
+            _leafLabels[node] = label;
+
+        if(leaf._seenSinceAttempt >= _gracePeriod){
+            leaf._seenSinceAttempt = 0;
+            attemptSplit(node);
+        }
+    }
+
+    /**
+     * Use the tree as learnt so far to predict a sample's label.
+     */
+    @Override
+    public synchronized int predictSample(final int[] sampleAttr){
+        return _leafLabels[findLeaf(sampleAttr)];
+    }
+
+    /**
+     * Trace a sample along the tree to its leaf.
+     */
+    private int findLeaf(final int[] sampleAttr){
+        int node = 0;
+        int attr;
+        while((attr = _splitAttrs[node]) != -1){
+            int attrValue = sampleAttr[attr];
+            if(attrValue < 0 || attrValue >= _attrOptions[attr])
+                throw new IllegalArgumentException("Sample's attribute #" + attr + " is out of the tree's range!");
+            node = _childBases[node] + attrValue;
+        }
+        return node;
+    }
+
+    /**
+     * Split a leaf on the attribute of the best Gini index if the Hoeffding bound allows, and the growth limits too.
+     */
+    private void attemptSplit(final int node){
+        Leaf leaf = _leaves[node];
+        int sampleWeight = leaf._sampleWeight;
+        if(_nodeDepths[node] >= _growthLimits.getMaxDepth() || sampleWeight < _growthLimits.getMinSamplesSplit())
+            return;
+
+        /* Nothing to gain in a pure leaf */
+        for(int j = 0; j < _labelOptions; j++){
+            if(leaf._labelCounts[j] == sampleWeight)
+                return;
+        }
+
+        /* Find the best and the second best reduction in impurity */
+        double giniIndex = GiniImpurity.giniIndex(leaf._labelCounts, 0, _labelOptions, sampleWeight);
+        int bestAttr = -1;
+        double bestReduction = 0;
+        double secondReduction = 0;
+        for(int i = 0; i < _attrCount; i++){
+            if(leaf._avcSets[i] == null)
+                continue;
+            double reduction = giniIndex - GiniImpurity.giniIndexOnAttr(leaf._avcSets[i], _attrOptions[i], _labelOptions, sampleWeight);
+            if(reduction > bestReduction){
+                secondReduction = bestReduction;
+                bestReduction = reduction;
+                bestAttr = i;
+            } else if(reduction > secondReduction){
+                secondReduction = reduction;
+            }
+        }
+        if(bestAttr == -1)
+            return;
+
+        /* Gini reductions range within [0, 1), so the Hoeffding bound is sqrt(ln(1 / delta) / 2n) */
+        double hoeffdingBound = Math.sqrt(Math.log(1 / _delta) / (2.0 * sampleWeight));
+        if(bestReduction - secondReduction <= hoeffdingBound && hoeffdingBound >= _tieThreshold)
+            return;
+        if(_growthLimits.getMinImpurityDecrease() > 0
+                && bestReduction * sampleWeight / _learntSampleCount < _growthLimits.getMinImpurityDecrease())
+            return;
+        if(_nodeCount + _attrOptions[bestAttr] > _growthLimits.getMaxNodes())
+            return;
+
+        split(node, bestAttr);
+    }
+
+    /**
+     * Turn a leaf into a split node on an attribute, with a fresh leaf for each value,
+     * each predicting the split leaf's label until it learns samples of its own.
+     */
+    private void split(final int node, final int attr){
+        Leaf leaf = _leaves[node];
+        _leaves[node] = null;
+
+        boolean[] availableAttrs = leaf.getAvailableAttrs();
+        availableAttrs[attr] = false;
+
+        _splitAttrs[node] = attr;
+        _childBases[node] = _nodeCount;
+        for(int v = 0; v < _attrOptions[attr]; v++)
+            addLeaf(_nodeDepths[node] + 1, _leafLabels[node], availableAttrs);
+        _treeDepth = Math.max(_treeDepth, _nodeDepths[node] + 1);
+    }
+
+    private void addLeaf(final int depth, final int label, final boolean[] availableAttrs){
+        if(_nodeCount == _splitAttrs.length){
+            int capacity = _nodeCount * 2;
+            _splitAttrs = Arrays.copyOf(_splitAttrs, capacity);
+            _childBases = Arrays.copyOf(_childBases, capacity);
+            _leafLabels = Arrays.copyOf(_leafLabels, capacity);
+            _nodeDepths = Arrays.copyOf(_nodeDepths, capacity);
+            _leaves = Arrays.copyOf(_leaves, capacity);
+        }
+        int node = _nodeCount++;
+        _splitAttrs[node] = -1;
+        _childBases[node] = 0;
+        _leafLabels[node] = label;
+        _nodeDepths[node] = depth;
+        _leaves[node] = new Leaf(availableAttrs);
+    }
+
+    /**
+     * Snapshot the tree as learnt so far into a DecisionTreeKernel, e.g. to save it with ModelFile.
+     */
+    public synchronized DecisionTreeKernel toKernel(){
+        return new DecisionTreeKernel(_labelOptions, _attrCount, _attrOptions.clone(), _treeDepth,
+                Arrays.copyOf(_splitAttrs, _nodeCount), Arrays.copyOf(_childBases, _nodeCount),
+                Arrays.copyOf(_leafLabels, _nodeCount));
+    }
+
+    /**
+     * Setters
+     */
+    /**
+     * @param delta Probability of splitting a leaf on another attribute than the best one, within (0, 1).
+     */
+    public synchronized void setDelta(final double delta) {
+        if((delta > 0 && delta < 1) == false)
+            throw new IllegalArgumentException("Delta must be within (0, 1)!");
+        this._delta = delta;
+    }
+    /**
+     * @param tieThreshold  Hoeffding bound under which a leaf is split even if its two best attributes are close.
+     */
+    public synchronized void setTieThreshold(final double tieThreshold) {
+        if(tieThreshold < 0 || Double.isNaN(tieThreshold))
+            throw new IllegalArgumentException("Tie threshold must not be negative!");
+        this._tieThreshold = tieThreshold;
+    }
+    /**
+     * @param gracePeriod   Samples a leaf learns between two split attempts.
+     */
+    public synchronized void setGracePeriod(final int gracePeriod) {
+        if(gracePeriod < 1)
+            throw new IllegalArgumentException("Grace period must be positive!");
+        this._gracePeriod = gracePeriod;
+    }
+    /**
+     * @param growthLimits  Limits on splitting leaves; maxNodes bounds the tree's memory.
+     */
+    public synchronized void setGrowthLimits(final GrowthLimits growthLimits) {
+        this._growthLimits = growthLimits;
+    }
+
+    /**
+     * Getters
+     */
+    public int getLabelOptions() {
+        return _labelOptions;
+    }
+    public int getAttrCount() {
+        return _attrCount;
+    }
+    public int[] getAttrOptions() {
+        return _attrOptions;
+    }
+    public synchronized int getNodeCount() {
+        return _nodeCount;
+    }
+    public synchronized int getTreeDepth() {
+        return _treeDepth;
+    }
+    public synchronized long getLearntSampleCount() {
+        return _learntSampleCount;
+    }
+
+    /*
+     * Counts of the samples reaching a leaf: label totals, and AVC-sets of the attributes it may still split on,
+     * laid out as AVCHistogram's.
+     */
+    private class Leaf {
+        private final int[] _labelCounts;
+        private final int[][] _avcSets;  // Null for attributes already split on along the path
+        private int _sampleWeight;
+        private int _seenSinceAttempt;
+
+        private Leaf(final boolean[] availableAttrs){
+            this._labelCounts = new int[_labelOptions];
+            this._avcSets = new int[_attrCount][];
+            for(int i = 0; i < _attrCount; i++){
+                if(availableAttrs[i])
+                    _avcSets[i] = new int[_attrOptions[i] * _labelOptions];
+            }
+        }
+
+        private void add(final int label, final int[] sampleAttr){
+            // A leaf that never splits stops counting rather than overflow; its majority stays as it is
+            if(_sampleWeight == Integer.MAX_VALUE)
+                return;
+
+            _labelCounts[label - 1]++;
+            for(int i = 0; i < _attrCount; i++){
+                if(_avcSets[i] != null)
+                    _avcSets[i][sampleAttr[i] * _labelOptions + label - 1]++;
+            }
+            _sampleWeight++;
+            _seenSinceAttempt++;
+        }
+
+        private boolean[] getAvailableAttrs(){
+            boolean[] availableAttrs = new boolean[_attrCount];
+            for(int i = 0; i < _attrCount; i++)
+                availableAttrs[i] = _avcSets[i] != null;
+            return availableAttrs;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package classification;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Builds a decision tree breadth-first from samples it never holds (as SLIQ or PLANET do):
+ * each level asks a HistogramSource for the histograms of all open nodes at once, typically one pass over the data,
+ * then splits every open node. Only the tree and the open nodes' histograms are kept in memory.
+ *
+ * Splits are decided as DecisionTreeKernel decides them when not a random forest, and nodes are numbered
+ * breadth-first as it compiles them, so both build the same tree out of the same samples.
+ *
+ * The histogram of an open node is a flat int[] of its label counts, followed by the AVC-set of each attribute
+ * the node may still split on, in getFrontierAttrs() order, laid out as AVCHistogram's. Attributes split on
+ * along the node's path are left out, so histograms shrink as the tree deepens. Which attributes these are
+ * follows from the tree's routing alone, so a worker mirroring the routing lays histograms out alike.
+ */
+public class LevelWiseTree {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Configuration
+    private GrowthLimits _growthLimits = new GrowthLimits();
+
+    // Metadata
+    private final int _labelOptions;
+    private final int _attrCount;
+    private final int[] _attrOptions;
+
+    // Tree grown so far
+    private int _nodeCount;
+    private int[] _splitAttrs;      // Attribute a node splits on, or -1 for a leaf or an open node
+    private int[] _childBases;      // Node of a split node's first child, its children being contiguous
+    private int[] _leafLabels;      // Label predicted by a leaf, the parent's most popular one for an open node, or 0
+    private int[] _nodeDepths;
+    private boolean[][] _availableAttrs;    // Attributes an open node may split on, null once closed
+    private int[] _frontierIndexes; // Position of an open node in the frontier, or -1
+    private int[] _frontier;        // Open nodes, in node order
+    private int[][] _frontierAttrs; // Attributes each open node may split on, whose AVC-sets its histogram holds
+    private int _trainSampleWeight;
+
+    /**
+     * Constructor
+     */
+    public LevelWiseTree(final int labelOptions, final int[] attrOptions){
+        if(labelOptions < 1 || attrOptions.length < 1)
+            throw new IllegalArgumentException("Dimension of samples is too small!");
+
+        this._labelOptions = labelOptions;
+        this._attrCount = attrOptions.length;
+        this._attrOptions = attrOptions.clone();
+    }
+
+    /**
+     * Build the tree level by level, one request to the source per level.
+     */
+    public DecisionTreeKernel build(final HistogramSource histogramSource) throws IOException{
+        /* Start from the root as the only open node */
+        _nodeCount = 0;
+        _splitAttrs = new int[INITIAL_CAPACITY];
+        _childBases = new int[INITIAL_CAPACITY];
+        _leafLabels = new int[INITIAL_CAPACITY];
+        _nodeDepths = new int[INITIAL_CAPACITY];
+        _availableAttrs = new boolean[INITIAL_CAPACITY][];
+        _frontierIndexes = new int[INITIAL_CAPACITY];
+        boolean[] availableAttrs = new boolean[_attrCount];
+        Arrays.fill(availableAttrs, true);
+        addNode(0, -1, availableAttrs);
+        _frontier = new int[]{0};
+        _frontierIndexes[0] = 0;
+        _trainSampleWeight = -1;
+
+        while(_frontier.length > 0){
+            routeFrontier();
+            int[][] histograms = histogramSource.countFrontier(this);
+            if(histograms.length != _frontier.length)
+                throw new IOException("Histograms do not match the frontier!");
+            if(_trainSampleWeight == -1)
+                _trainSampleWeight = Math.max(1, sum(histograms[0], 0, _labelOptions));
+
+            /* Split or close every open node, collecting the next level's */
+            int[] nextFrontier = new int[0];
+            int nextFrontierSize = 0;
+            for(int f = 0; f < _frontier.length; f++){
+                int node = _frontier[f];
+                _frontierIndexes[node] = -1;
+                if(split(node, _frontierAttrs[f], histograms[f]) == false)
+                    continue;
+
+                int childrenCount = _attrOptions[_splitAttrs[node]];
+                if(nextFrontierSize + childrenCount > nextFrontier.length)
+                    nextFrontier = Arrays.copyOf(nextFrontier, Math.max(nextFrontier.length * 2, nextFrontierSize + childrenCount));
+                for(int c = _childBases[node]; c < _childBases[node] + childrenCount; c++){
+                    if(_availableAttrs[c] != null)
+                        nextFrontier[nextFrontierSize++] = c;
+                }
+                histograms[f] = null;
+            }
+            _frontier = Arrays.copyOf(nextFrontier, nextFrontierSize);
+            for(int f = 0; f < _frontier.length; f++)
+                _frontierIndexes[_frontier[f]] = f;
+        }
+
+        int treeDepth = 0;
+        for(int i = 0; i < _nodeCount; i++)
+            treeDepth = Math.max(treeDepth, _nodeDepths[i]);
+        return new DecisionTreeKernel(_labelOptions, _attrCount, _attrOptions.clone(), treeDepth,
+                Arrays.copyOf(_splitAttrs, _nodeCount), Arrays.copyOf(_childBases, _nodeCount),
+                Arrays.copyOf(_leafLabels, _nodeCount));
+    }
+
+    /**
+     * @return a zeroed histogram for each open node, of the attributes it may still split on.
+     */
+    public int[][] newFrontierHistograms(){
+        int[][] histograms = new int[_frontier.length][];
+        for(int f = 0; f < _frontier.length; f++)
+            histograms[f] = new int[getHistogramSize(f)];
+        return histograms;
+    }
+
+    /**
+     * Find the attributes each open node may still split on, being those not split on along its path.
+     */
+    private void routeFrontier(){
+        int[] parents = new int[_nodeCount];
+        parents[0] = -1;
+        for(int i = 0; i < _nodeCount; i++){
+            if(_splitAttrs[i] == -1)
+                continue;
+            for(int c = _childBases[i]; c < _childBases[i] + _attrOptions[_splitAttrs[i]]; c++)
+                parents[c] = i;
+        }
+
+        _frontierAttrs = new int[_frontier.length][];
+        boolean[] splitOnPath = new boolean[_attrCount];
+        for(int f = 0; f < _frontier.length; f++){
+            Arrays.fill(splitOnPath, false);
+            int pathAttrCount = 0;
+            for(int node = parents[_frontier[f]]; node != -1; node = parents[node]){
+                splitOnPath[_splitAttrs[node]] = true;
+                pathAttrCount++;
+            }
+            int[] attrs = new int[Math.max(0, _attrCount - pathAttrCount)];
+            int attrCount = 0;
+            for(int i = 0; i < _attrCount && attrCount < attrs.length; i++){
+                if(splitOnPath[i] == false)
+                    attrs[attrCount++] = i;
+            }
+            _frontierAttrs[f] = attrs;
+        }
+    }
+
+    /**
+     * Count a sample into the histogram of the open node it reaches, if any.
+     * @param histograms    Histograms indexed by frontier position.
+     */
+    public void addSample(final int[][] histograms, final int label, final int[] sampleAttr){
+        if(label < 1 || label > _labelOptions)
+            throw new IllegalArgumentException("Sample's label is out of the tree's range!");
+        for(int i = 0; i < _attrCount; i++){
+            if(sampleAttr[i] < 0 || sampleAttr[i] >= _attrOptions[i])
+                throw new IllegalArgumentException("Sample's attribute #" + i + " is out of the tree's range!");
+        }
+
+        /* Trace the sample along the tree so far */
+        int node = 0;
+        int attr;
+        while((attr = _splitAttrs[node]) != -1){
+            node = _childBases[node] + sampleAttr[attr];
+        }
+        int frontierIndex = _frontierIndexes[node];
+        if(frontierIndex == -1)
+            return;
+
+        int[] histogram = histograms[frontierIndex];
+        histogram[label - 1]++;
+        int offset = _labelOptions;
+        for(int a : _frontierAttrs[frontierIndex]){
+            histogram[offset + sampleAttr[a] * _labelOptions + label - 1]++;
+            offset += _attrOptions[a] * _labelOptions;
+        }
+    }
+
+    /**
+     * Decide whether and how to split an open node from its histogram, as DTNode.split() does.
+     * If so, create its children, opening those that may be split further.
+     * @param attrs     Attributes the node may split on, whose AVC-sets follow the label counts in its histogram.
+     * @return whether the node is split.
+     */
+    private boolean split(final int node, final int[] attrs, final int[] histogram){
+        int[] labelCounts = Arrays.copyOf(histogram, _labelOptions);
+        int sampleWeight = sum(labelCounts, 0, _labelOptions);
+        int mostPossibleLabel = mostPossibleLabel(labelCounts, _leafLabels[node]);
+        if(shouldStop(node, labelCounts, sampleWeight)){
+            closeLeaf(node, mostPossibleLabel);
+            return false;
+        }
+
+        /* Find the attribute with the maximum reduction in Gini index */
+        boolean[] availableAttrs = _availableAttrs[node];
+        double giniIndex = GiniImpurity.giniIndex(labelCounts, 0, _labelOptions, sampleWeight);
+        int thisAttrIndex = -1;
+        int thisAttrOffset = -1;
+        double maxGiniIndex = 0;
+        int minSamplesLeaf = _growthLimits.getMinSamplesLeaf();
+        int offset = _labelOptions;
+        for(int i : attrs){
+            int avcSetSize = _attrOptions[i] * _labelOptions;
+            int[] avcSet = Arrays.copyOfRange(histogram, offset, offset + avcSetSize);
+            offset += avcSetSize;
+            if(minSamplesLeaf > 1 && hasSmallChild(avcSet, i, minSamplesLeaf))
+                continue;
+
+            double reductionInImpurity = giniIndex - GiniImpurity.giniIndexOnAttr(avcSet, _attrOptions[i], _labelOptions, sampleWeight);
+            if(reductionInImpurity >= maxGiniIndex){
+                thisAttrIndex = i;
+                thisAttrOffset = offset - avcSetSize;
+                maxGiniIndex = reductionInImpurity;
+            }
+        }
+        if(thisAttrIndex == -1
+                || (_growthLimits.getMinImpurityDecrease() > 0
+                    && maxGiniIndex * sampleWeight / _trainSampleWeight < _growthLimits.getMinImpurityDecrease())
+                || _nodeCount + _attrOptions[thisAttrIndex] > _growthLimits.getMaxNodes()){
+            closeLeaf(node, mostPossibleLabel);
+            return false;
+        }
+
+        /* Create the children, closing at once those that the parent's AVC-set shows should stop */
+        boolean[] childAvailableAttrs = availableAttrs.clone();
+        childAvailableAttrs[thisAttrIndex] = false;
+        _splitAttrs[node] = thisAttrIndex;
+        _childBases[node] = _nodeCount;
+        _leafLabels[node] = 0;
+        _availableAttrs[node] = null;
+        for(int v = 0; v < _attrOptions[thisAttrIndex]; v++){
+            int child = addNode(_nodeDepths[node] + 1, mostPossibleLabel, childAvailableAttrs);
+            int childOffset = thisAttrOffset + v * _labelOptions;
+            int[] childLabelCounts = Arrays.copyOfRange(histogram, childOffset, childOffset + _labelOptions);
+            if(shouldStop(child, childLabelCounts, sum(childLabelCounts, 0, _labelOptions)))
+                closeLeaf(child, mostPossibleLabel(childLabelCounts, mostPossibleLabel));
+        }
+        return true;
+    }
+
+    /**
+     * @return whether a node should be a leaf, judging by its label totals only.
+     */
+    private boolean shouldStop(final int node, final int[] labelCounts, final int sampleWeight){
+        if(_nodeDepths[node] >= _attrCount) // No remaining attributes for further partitioning
+            return true;
+        if(sampleWeight == 0) // No samples left
+            return true;
+        for(int j = 0; j < _labelOptions; j++){
+            if(labelCounts[j] == sampleWeight) // All samples belong to the same class
+                return true;
+        }
+        return _nodeDepths[node] >= _growthLimits.getMaxDepth() || sampleWeight < _growthLimits.getMinSamplesSplit();
+    }
+
+    /**
+     * @return the first label of the most samples, or the parent's most popular label if there is no sample.
+     */
+    private int mostPossibleLabel(final int[] labelCounts, final int parentPopularLabel){
+        int mostPossibleLabel = -1;
+        int mostPossibleLabelCount = 0;
+        for(int j = 0; j < _labelOptions; j++){
+            if(labelCounts[j] > mostPossibleLabelCount){
+                mostPossibleLabelCount = labelCounts[j];
+                mostPossibleLabel = j + 1;
+            }
+        }
+        return mostPossibleLabel != -1 ? mostPossibleLabel : parentPopularLabel;
+    }
+
+    private boolean hasSmallChild(final int[] avcSet, final int attrIndex, final int minSamplesLeaf){
+        for(int v = 0; v < _attrOptions[attrIndex]; v++){
+            int childWeight = sum(avcSet, v * _labelOptions, _labelOptions);
+            if(childWeight > 0 && childWeight < minSamplesLeaf)
+                return true;
+        }
+        return false;
+    }
+
+    private void closeLeaf(final int node, final int label){
+        _splitAttrs[node] = -1;
+        _leafLabels[node] = label;
+        _availableAttrs[node] = null;
+    }
+
+    /**
+     * Append an open node.
+     * @param parentPopularLabel    Label to predict if the node turns out to have no sample.
+     */
+    private int addNode(final int depth, final int parentPopularLabel, final boolean[] availableAttrs){
+        if(_nodeCount == _splitAttrs.length){
+            int capacity = _nodeCount * 2;
+            _splitAttrs = Arrays.copyOf(_splitAttrs, capacity);
+            _childBases = Arrays.copyOf(_childBases, capacity);
+            _leafLabels = Arrays.copyOf(_leafLabels, capacity);
+            _nodeDepths = Arrays.copyOf(_nodeDepths, capacity);
+            _availableAttrs = Arrays.copyOf(_availableAttrs, capacity);
+            _frontierIndexes = Arrays.copyOf(_frontierIndexes, capacity);
+        }
+        int node = _nodeCount++;
+        _splitAttrs[node] = -1;
+        _childBases[node] = 0;
+        _leafLabels[node] = parentPopularLabel;
+        _nodeDepths[node] = depth;
+        _availableAttrs[node] = availableAttrs;
+        _frontierIndexes[node] = -1;
+        return node;
+    }
+
+    /**
+     * Take over the routing of another LevelWiseTree's current level, as a worker does to count its own samples
+     * for a remote tree: the nodes' splits, and the open nodes in frontier order.
+     */
+    public void setFrontier(final int nodeCount, final int[] splitAttrs, final int[] childBases, final int[] frontier){
+        if(nodeCount < 1 || splitAttrs.length < nodeCount || childBases.length < nodeCount)
+            throw new IllegalArgumentException("Tree must have a root!");
+        for(int i = 0; i < nodeCount; i++){
+            int attr = splitAttrs[i];
+            if(attr < -1 || attr >= _attrCount
+                    || (attr != -1 && (childBases[i] <= i || childBases[i] > nodeCount - _attrOptions[attr])))
+                throw new IllegalArgumentException("Node #" + i + " is corrupted!");
+        }
+        _nodeCount = nodeCount;
+        _splitAttrs = Arrays.copyOf(splitAttrs, nodeCount);
+        _childBases = Arrays.copyOf(childBases, nodeCount);
+        _frontierIndexes = new int[nodeCount];
+        Arrays.fill(_frontierIndexes, -1);
+        for(int f = 0; f < frontier.length; f++){
+            int node = frontier[f];
+            if(node < 0 || node >= nodeCount || _splitAttrs[node] != -1 || _frontierIndexes[node] != -1)
+                throw new IllegalArgumentException("Frontier node #" + node + " is not a distinct leaf!");
+            _frontierIndexes[node] = f;
+        }
+        _frontier = frontier.clone();
+        routeFrontier();
+    }
+
+    private static int sum(final int[] counts, final int offset, final int length){
+        int sum = 0;
+        for(int i = offset; i < offset + length; i++)
+            sum += counts[i];
+        return sum;
+    }
+
+    /**
+     * Setters
+     */
+    public void setGrowthLimits(final GrowthLimits growthLimits) {
+        this._growthLimits = growthLimits;
+    }
+
+    /**
+     * Getters
+     */
+    public int getLabelOptions() {
+        return _labelOptions;
+    }
+    public int getAttrCount() {
+        return _attrCount;
+    }
+    public int[] getAttrOptions() {
+        return _attrOptions;
+    }
+    /**
+     * @return the ints of an open node's histogram.
+     */
+    public int getHistogramSize(final int frontierIndex) {
+        int histogramSize = _labelOptions;
+        for(int attr : _frontierAttrs[frontierIndex])
+            histogramSize += _attrOptions[attr] * _labelOptions;
+        return histogramSize;
+    }
+    /**
+     * @return the attributes an open node may still split on, in the order of their AVC-sets in its histogram.
+     */
+    public int[] getFrontierAttrs(final int frontierIndex) {
+        return _frontierAttrs[frontierIndex];
+    }
+    /**
+     * @return the number of open nodes, which histograms are requested for.
+     */
+    public int getFrontierSize() {
+        return _frontier.length;
+    }
+    public int getNodeCount() {
+        return _nodeCount;
+    }
+    /**
+     * @return the nodes' split attributes, valid up to getNodeCount().
+     */
+    public int[] getSplitAttrs() {
+        return _splitAttrs;
+    }
+    /**
+     * @return the nodes' first children, valid up to getNodeCount().
+     */
+    public int[] getChildBases() {
+        return _childBases;
+    }
+    /**
+     * @return the open nodes, in frontier order.
+     */
+    public int[] getFrontier() {
+        return _frontier;
+    }
+}
@@ -0,0 +1,144 @@
+package classification;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only random forest predicting straight from a memory-mapped model file saved by RandomForest.saveModel().
+ * The trees' node arrays are never copied onto the heap, so processes scoring with the same file
+ * share one copy of it in the page cache, and opening reads only the header and each tree's node count.
+ *
+ * Predictions only read the mapping at absolute positions, so they can be made from any number of threads.
+ * As the trees are not checked up front, a corrupted file fails the walk instead of the opening.
+ */
+public class MappedForest implements Predictor {
+    // Metadata
+    private final int _labelOptions;
+    private final int _attrCount;
+    private final int[] _attrOptions;
+
+    // Classifier, as ints of the mapped file
+    private final IntBuffer _ints;
+    private final int _forestSize;
+    private final int[] _treeBases;     // Int position of each tree's splitAttrs; childBases and leafLabels follow
+    private final int[] _treeNodeCounts;
+
+    private MappedForest(final IntBuffer ints, final ModelFile.Header header, final int[] treeBases, final int[] treeNodeCounts){
+        this._labelOptions = header._labelOptions;
+        this._attrCount = header._attrOptions.length;
+        this._attrOptions = header._attrOptions;
+
+        this._ints = ints;
+        this._forestSize = header._treeCount;
+        this._treeBases = treeBases;
+        this._treeNodeCounts = treeNodeCounts;
+    }
+
+    /**
+     * Map a random forest's model file. The mapping outlives the file being closed, until garbage collected.
+     */
+    public static MappedForest open(final File modelFile) throws IOException{
+        try(RandomAccessFile file = new RandomAccessFile(modelFile, "r");
+            FileChannel channel = file.getChannel()){
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Model file too large to map!");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer ints = buffer.asIntBuffer();
+
+            /* Header */
+            ModelFile.Header header = ModelFile.Header.read(ints, ModelFile.KIND_RANDOM_FOREST);
+
+            /* Locate each tree by skipping over its node arrays */
+            int[] treeBases = new int[header._treeCount];
+            int[] treeNodeCounts = new int[header._treeCount];
+            for(int t = 0; t < header._treeCount; t++){
+                int nodeCount = ints.get();
+                ints.get(); // Tree depth
+                if(nodeCount <= 0 || (long) nodeCount * 3 > ints.remaining())
+                    throw new IOException("Model file corrupted!");
+                treeBases[t] = ints.position();
+                treeNodeCounts[t] = nodeCount;
+                ints.position(ints.position() + nodeCount * 3);
+            }
+            return new MappedForest(ints, header, treeBases, treeNodeCounts);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Model file corrupted!", e);
+        }
+    }
+
+    /**
+     * Predict a sample's label by the trees' majority vote, ties going to the smaller label.
+     */
+    @Override
+    public int predictSample(final int[] sampleAttr){
+        /* Record every decision tree's prediction */
+        int[] candidates = new int[_labelOptions];
+        for(int t = 0; t < _forestSize; t++){
+            candidates[predictTree(t, sampleAttr) - 1]++;
+        }
+
+        /* Select the prediction with most votes */
+        int maxVotes = 0;
+        int maxVoteIndex = 0;
+        for(int i = 0; i < _labelOptions; i++){
+            if(candidates[i] > maxVotes){
+                maxVoteIndex = i;
+                maxVotes = candidates[i];
+            }
+        }
+        return maxVoteIndex + 1;
+    }
+
+    /**
+     * Trace a sample along one tree of the mapped file.
+     */
+    private int predictTree(final int tree, final int[] sampleAttr){
+        final IntBuffer ints = _ints;
+        final int nodeCount = _treeNodeCounts[tree];
+        final int splitAttrs = _treeBases[tree];
+        final int childBases = splitAttrs + nodeCount;
+        final int leafLabels = childBases + nodeCount;
+
+        int node = 0;
+        int attr;
+        while((attr = ints.get(splitAttrs + node)) != -1){
+            if(attr < 0 || attr >= _attrCount)
+                throw new IllegalStateException("Model file corrupted!");
+            int attrValue = sampleAttr[attr];
+            if(attrValue < 0 || attrValue >= _attrOptions[attr])
+                throw new IllegalArgumentException("Sample's attribute #" + attr + " is out of the trained range!");
+
+            // Children always come after their parent, so the walk ends even on a corrupted file
+            int child = ints.get(childBases + node) + attrValue;
+            if(child <= node || child >= nodeCount)
+                throw new IllegalStateException("Model file corrupted!");
+            node = child;
+        }
+
+        int label = ints.get(leafLabels + node);
+        if(label < 1 || label > _labelOptions)
+            throw new IllegalStateException("Model file corrupted!");
+        return label;
+    }
+
+    /**
+     * Getters
+     */
+    public int getLabelOptions() {
+        return _labelOptions;
+    }
+    public int getAttrCount() {
+        return _attrCount;
+    }
+    public int[] getAttrOptions() {
+        return _attrOptions;
+    }
+    public int getForestSize() {
+        return _forestSize;
+    }
+}
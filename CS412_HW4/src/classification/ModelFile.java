@@ -0,0 +1,162 @@
+package classification;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file of trained decision tree kernels, either a single decision tree or a whole random forest.
+ * Only the compiled trees and their metadata are stored, never any training sample.
+ *
+ * Layout, big-endian:
+ *   int magic, int version, int kind, int labelOptions, int attrCount, int[attrCount] attrOptions, int treeCount,
+ *   then each tree as (int nodeCount, int treeDepth, int[nodeCount] splitAttrs,
+ *   int[nodeCount] childBases, int[nodeCount] leafLabels).
+ * Every field is an int, so a tree's node arrays can be read in bulk or straight from a mapped file.
+ */
+public class ModelFile {
+    public static final int KIND_DECISION_TREE = 0;
+    public static final int KIND_RANDOM_FOREST = 1;
+
+    private static final int MAGIC = 0x44544D4C; // "DTML"
+    private static final int VERSION = 1;
+
+    private ModelFile(){
+    }
+
+    /**
+     * Write trained kernels of the same dimension. The file is written aside then moved in place,
+     * so a concurrent or interrupted run never sees a partial model.
+     */
+    public static void save(final File modelFile, final int kind, final List<DecisionTreeKernel> decisionTreeKernels) throws IOException{
+        if(decisionTreeKernels.isEmpty())
+            throw new IOException("No trained tree to save!");
+        DecisionTreeKernel first = decisionTreeKernels.get(0);
+        int attrCount = first.getAttrCount();
+
+        File tempFile = new File(modelFile.getPath() + ".tmp");
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))){
+            /* Header */
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(kind);
+            output.writeInt(first.getLabelOptions());
+            output.writeInt(attrCount);
+            for(int i = 0; i < attrCount; i++)
+                output.writeInt(first.getAttrOptions()[i]);
+            output.writeInt(decisionTreeKernels.size());
+
+            /* Trees */
+            for(DecisionTreeKernel decisionTreeKernel : decisionTreeKernels){
+                if(decisionTreeKernel.getSplitAttrs() == null)
+                    throw new IOException("Decision tree must be trained before it can be saved!");
+                if(decisionTreeKernel.getLabelOptions() != first.getLabelOptions() || decisionTreeKernel.getAttrCount() != attrCount)
+                    throw new IOException("Trees of a model must share the same dimension!");
+
+                output.writeInt(decisionTreeKernel.getNodeCount());
+                output.writeInt(decisionTreeKernel.getTreeDepth());
+                writeInts(output, decisionTreeKernel.getSplitAttrs());
+                writeInts(output, decisionTreeKernel.getChildBases());
+                writeInts(output, decisionTreeKernel.getLeafLabels());
+            }
+        }
+        Files.move(tempFile.toPath(), modelFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load the trained kernels of a model file, reading each node array in bulk from the mapped file.
+     * @param kind  Kind of model expected in the file.
+     */
+    public static List<DecisionTreeKernel> load(final File modelFile, final int kind) throws IOException{
+        try(RandomAccessFile file = new RandomAccessFile(modelFile, "r");
+            FileChannel channel = file.getChannel()){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer ints = buffer.asIntBuffer();
+
+            /* Header */
+            Header header = Header.read(ints, kind);
+            int[] attrOptions = header._attrOptions;
+
+            /* Trees */
+            List<DecisionTreeKernel> decisionTreeKernels = new ArrayList<>(header._treeCount);
+            for(int t = 0; t < header._treeCount; t++){
+                int nodeCount = ints.get();
+                int treeDepth = ints.get();
+                if(nodeCount <= 0 || (long) nodeCount * 3 > ints.remaining())
+                    throw new IOException("Model file corrupted!");
+
+                int[] splitAttrs = new int[nodeCount];
+                int[] childBases = new int[nodeCount];
+                int[] leafLabels = new int[nodeCount];
+                ints.get(splitAttrs);
+                ints.get(childBases);
+                ints.get(leafLabels);
+                decisionTreeKernels.add(new DecisionTreeKernel(header._labelOptions, attrOptions.length, attrOptions, treeDepth,
+                        splitAttrs, childBases, leafLabels));
+            }
+            return decisionTreeKernels;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Model file corrupted!", e);
+        }
+    }
+
+    /**
+     * Model-wide fields of a model file.
+     */
+    static final class Header {
+        final int _labelOptions;
+        final int[] _attrOptions;
+        final int _treeCount;
+
+        private Header(final int labelOptions, final int[] attrOptions, final int treeCount){
+            this._labelOptions = labelOptions;
+            this._attrOptions = attrOptions;
+            this._treeCount = treeCount;
+        }
+
+        /**
+         * Read and check the header, leaving the buffer at the first tree.
+         * @param kind  Kind of model expected in the file.
+         */
+        static Header read(final IntBuffer ints, final int kind) throws IOException{
+            if(ints.remaining() < 5 || ints.get() != MAGIC)
+                throw new IOException("Not a model file!");
+            if(ints.get() != VERSION)
+                throw new IOException("Unsupported model file version!");
+            if(ints.get() != kind)
+                throw new IOException("Model file holds another kind of model!");
+
+            int labelOptions = ints.get();
+            int attrCount = ints.get();
+            if(labelOptions < 1 || attrCount < 1 || attrCount >= ints.remaining())
+                throw new IOException("Model file corrupted!");
+            int[] attrOptions = new int[attrCount];
+            ints.get(attrOptions);
+            for(int i = 0; i < attrCount; i++){
+                if(attrOptions[i] < 1)
+                    throw new IOException("Model file corrupted!");
+            }
+
+            int treeCount = ints.get();
+            if(treeCount <= 0)
+                throw new IOException("Model file corrupted!");
+            return new Header(labelOptions, attrOptions, treeCount);
+        }
+    }
+
+    private static void writeInts(final DataOutputStream output, final int[] values) throws IOException{
+        for(int value : values)
+            output.writeInt(value);
+    }
+}
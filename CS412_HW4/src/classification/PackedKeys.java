@@ -0,0 +1,76 @@
+package classification;
+
+/**
+ * Keys of categorical values packed into longs, each value taking the bits its options need,
+ * as used by PredictionCache and DatasetCollapser to look samples up in open-addressing tables.
+ *
+ * Values are packed densely from bit 0 of the first long on, so a value ending past a long's boundary
+ * straddles it, its high bits starting the next long.
+ */
+class PackedKeys {
+    private PackedKeys(){
+    }
+
+    /**
+     * @return bits to hold any value within [0, options).
+     */
+    static int bitsOf(final int options){
+        return 32 - Integer.numberOfLeadingZeros(Math.max(0, options - 1));
+    }
+
+    /**
+     * @return longs of a key of the given bits, at least one.
+     */
+    static int wordsOf(final int keyBits){
+        return Math.max(1, (keyBits + 63) / 64);
+    }
+
+    /**
+     * Pack a value of the given bits into a key at a bit offset, the key's bits there being zero.
+     * A value of no bits, i.e. of a single option, takes no word, even at the end of a full key.
+     * @return the bit offset of the next value.
+     */
+    static int pack(final long[] key, final int bit, final int value, final int bits){
+        if(bits == 0)
+            return bit;
+        int word = bit >>> 6;
+        int offset = bit & 63;
+        key[word] |= (long) value << offset;
+        if(offset + bits > 64)
+            key[word + 1] |= (long) value >>> (64 - offset);
+        return bit + bits;
+    }
+
+    static long hash(final long[] key){
+        long hash = 0;
+        for(long word : key)
+            hash = hash(hash ^ word);
+        return hash;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, so that keys differing in low bits spread over a table's slots;
+     * a key of a single long hashes the same as a key of longs holding it.
+     */
+    static long hash(long hash){
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @param keys  Keys of key.length longs each, one after another.
+     * @return whether the key at an index of keys equals key.
+     */
+    static boolean keyEquals(final long[] keys, final int index, final long[] key){
+        int base = index * key.length;
+        for(int w = 0; w < key.length; w++){
+            if(keys[base + w] != key[w])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,59 @@
+package classification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport over the standard input and output of a child process, its standard error being inherited.
+ */
+public class PipeTransport implements Transport {
+    /* Time a child is given to exit once its input is closed */
+    private static final long EXIT_TIMEOUT_SECONDS = 5;
+
+    private final Process _process;
+
+    private PipeTransport(final Process process){
+        this._process = process;
+    }
+
+    /**
+     * Start a child process, e.g. a JVM running HistogramWorker.
+     */
+    public static PipeTransport launch(final List<String> command) throws IOException{
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return new PipeTransport(processBuilder.start());
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return _process.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return _process.getOutputStream();
+    }
+
+    /**
+     * Close the child's input, so that it ends its session, and wait for it to exit before killing it.
+     */
+    @Override
+    public void close() throws IOException{
+        try {
+            _process.getOutputStream().close();
+        } catch (IOException e) {
+            // The child may be gone already
+        }
+        try {
+            if(_process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS) == false)
+                _process.destroyForcibly();
+        } catch (InterruptedException e) {
+            _process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package classification;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent prediction requests into batches, so that each tree is traversed once per batch
+ * with predictBatch() rather than once per request.
+ *
+ * A batch is closed when it holds maxBatchSize samples, or when the window since its first request's arrival
+ * has passed, so that no request waits longer than the window for others. A window of 0 only takes
+ * the requests already queued. Each batcher thread forms and predicts its own batches.
+ */
+public class PredictionBatcher implements Closeable {
+    // Configuration
+    private final Classifier _classifier;
+    private final long _windowNanos;
+    private final int _maxBatchSize;
+
+    // Requests waiting for a batch
+    private final BlockingQueue<Request> _queue;
+    private final Thread[] _threads;
+    private volatile boolean _closed;
+
+    // Counters
+    private final LongAdder _batchCount;
+    private final LongAdder _batchedSampleCount;
+
+    /**
+     * Constructor, starting the batcher threads.
+     * @param classifier    A trained classifier, only predicted with.
+     * @param windowNanos   Longest time a batch waits for more requests after its first one.
+     * @param threadCount   Batches predicted at the same time.
+     */
+    public PredictionBatcher(final Classifier classifier, final long windowNanos, final int maxBatchSize, final int threadCount){
+        if(windowNanos < 0)
+            throw new IllegalArgumentException("Batch window must not be negative!");
+        if(maxBatchSize < 1 || threadCount < 1)
+            throw new IllegalArgumentException("Max batch size and thread count must be positive!");
+
+        this._classifier = classifier;
+        this._windowNanos = windowNanos;
+        this._maxBatchSize = maxBatchSize;
+        this._queue = new LinkedBlockingQueue<>();
+        this._batchCount = new LongAdder();
+        this._batchedSampleCount = new LongAdder();
+
+        this._threads = new Thread[threadCount];
+        for(int t = 0; t < threadCount; t++){
+            _threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runBatches();
+                }
+            }, "prediction-batcher-" + t);
+            _threads[t].setDaemon(true);
+            _threads[t].start();
+        }
+    }
+
+    /**
+     * Predict the labels of samples along with other requests, waiting for the batch to be predicted.
+     * @param samples   Attribute values of each sample, in the classifier's dimension and range.
+     */
+    public int[] predict(final int[][] samples) throws InterruptedException, ExecutionException{
+        if(_closed)
+            throw new IllegalStateException("Batcher is closed!");
+        if(samples.length == 0)
+            return new int[0];
+        int attrCount = _classifier.getAttrCount();
+        int[] attrOptions = _classifier.getAttrOptions();
+        for(int[] sampleAttr : samples){
+            if(sampleAttr.length != attrCount)
+                throw new IllegalArgumentException("Sample should have " + attrCount + " attributes!");
+            for(int i = 0; i < attrCount; i++){
+                if(sampleAttr[i] < 0 || sampleAttr[i] >= attrOptions[i])
+                    throw new IllegalArgumentException("Sample's attribute #" + (i + 1) + " is out of the model's range!");
+            }
+        }
+
+        Request request = new Request(samples);
+        _queue.add(request);
+        // Batcher threads may have drained the queue for good in between
+        if(_closed && _queue.remove(request))
+            throw new IllegalStateException("Batcher is closed!");
+        return request._future.get();
+    }
+
+    /**
+     * Loop of a batcher thread: form a batch, predict it, and hand out its labels.
+     */
+    private void runBatches(){
+        int labelOptions = _classifier.getLabelOptions();
+        int attrCount = _classifier.getAttrCount();
+        Dataset batch = new Dataset(labelOptions, attrCount, _classifier.getAttrOptions(), _maxBatchSize);
+        int[] votes = new int[_maxBatchSize * labelOptions];
+        int[] predictedLabels = new int[_maxBatchSize];
+        Request[] rowRequests = new Request[_maxBatchSize];   // Request and sample of each row of the batch
+        int[] rowSamples = new int[_maxBatchSize];
+        List<Request> requests = new ArrayList<>();
+
+        while(_closed == false){
+            /* Wait for the first request, then for others until the batch is full or the window is over */
+            requests.clear();
+            try {
+                Request first = _queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null)
+                    continue;
+                requests.add(first);
+                int sampleCount = first._samples.length;
+                long deadline = first._arrivalNanos + _windowNanos;
+                while(sampleCount < _maxBatchSize){
+                    Request next = _queue.poll();
+                    if(next == null){
+                        long remaining = deadline - System.nanoTime();
+                        if(remaining <= 0)
+                            break;
+                        next = _queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if(next == null)
+                            break;
+                    }
+                    requests.add(next);
+                    sampleCount += next._samples.length;
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            /* Predict the requests' samples, a full batch at a time as a request may hold more than one */
+            try {
+                int rowCount = 0;
+                for(Request request : requests){
+                    for(int s = 0; s < request._samples.length; s++){
+                        batch.setSample(rowCount, 0, request._samples[s]);
+                        rowRequests[rowCount] = request;
+                        rowSamples[rowCount] = s;
+                        if(++rowCount == _maxBatchSize){
+                            predictRows(batch, rowCount, votes, predictedLabels, rowRequests, rowSamples);
+                            rowCount = 0;
+                        }
+                    }
+                }
+                if(rowCount > 0)
+                    predictRows(batch, rowCount, votes, predictedLabels, rowRequests, rowSamples);
+            } catch (Exception e) {
+                for(Request request : requests)
+                    request._future.completeExceptionally(e);
+                continue;
+            }
+            for(Request request : requests)
+                request._future.complete(request._predictedLabels);
+        }
+
+        /* Fail whatever is left once closed */
+        Request request;
+        while((request = _queue.poll()) != null)
+            request._future.completeExceptionally(new IllegalStateException("Batcher is closed!"));
+    }
+
+    /**
+     * Predict the first rowCount rows of the batch, and hand each label to the request the row belongs to.
+     */
+    private void predictRows(final Dataset batch, final int rowCount, final int[] votes, final int[] predictedLabels,
+                             final Request[] rowRequests, final int[] rowSamples) throws Exception{
+        _classifier.predictBatch(batch, 0, rowCount, votes, predictedLabels);
+        _batchCount.increment();
+        _batchedSampleCount.add(rowCount);
+
+        for(int i = 0; i < rowCount; i++){
+            rowRequests[i]._predictedLabels[rowSamples[i]] = predictedLabels[i];
+            rowRequests[i] = null;
+        }
+    }
+
+    /**
+     * Stop the batcher threads, failing the requests still queued.
+     */
+    @Override
+    public void close(){
+        _closed = true;
+        for(Thread thread : _threads){
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Getters
+     */
+    public long getBatchCount() {
+        return _batchCount.sum();
+    }
+    public long getBatchedSampleCount() {
+        return _batchedSampleCount.sum();
+    }
+    public long getWindowNanos() {
+        return _windowNanos;
+    }
+    public int getMaxBatchSize() {
+        return _maxBatchSize;
+    }
+
+    /*
+     * Samples of a request and their labels, once predicted.
+     */
+    private static class Request {
+        private final int[][] _samples;
+        private final int[] _predictedLabels;
+        private final long _arrivalNanos;
+        private final CompletableFuture<int[]> _future;
+
+        private Request(final int[][] samples){
+            this._samples = samples;
+            this._predictedLabels = new int[samples.length];
+            this._arrivalNanos = System.nanoTime();
+            this._future = new CompletableFuture<>();
+        }
+    }
+}
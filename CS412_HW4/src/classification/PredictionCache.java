@@ -0,0 +1,282 @@
+package classification;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of predictions in front of another Predictor, for categorical samples recurring at scoring time.
+ * A hit replaces a walk of every tree by a hash probe.
+ *
+ * A sample's key is its attribute vector packed into longs by PackedKeys, each attribute taking the bits its options need;
+ * most datasets need a single long. Keys live in primitive arrays under open addressing, split into segments
+ * each locked on its own. A key is looked for within a probe window of PROBE_LIMIT slots;
+ * when the window is full, an entry of it is evicted by CLOCK, sparing entries hit since the hand last passed.
+ *
+ * The predictor must not change while cached, e.g. clear() the cache once a classifier is retrained.
+ * Samples outside the predictor's dimension can not be packed, and are passed through uncached.
+ *
+ * Only RandomForest puts a cache in front of its trees, see RandomForest.setPredictionCacheCapacity();
+ * DecisionTree and DecisionTreeKernel.predictSample() are not wired to one, a single tree walk costing about a probe,
+ * though a DecisionTree may still be wrapped as any Predictor.
+ */
+public class PredictionCache implements Predictor {
+    /* Slots a key may take after its home slot, which bounds a lookup */
+    private static final int PROBE_LIMIT = 8;
+    private static final int SEGMENT_COUNT = 16;
+    private static final int MAX_CAPACITY = 1 << 28;
+
+    // Configuration
+    private final Predictor _predictor;
+    private final int _attrCount;
+    private final int[] _attrOptions;
+    private final int[] _attrBits;      // Bits of each attribute in a key
+    private final int _keyWords;        // Longs per key
+    private final ThreadLocal<long[]> _scratchKey; // Key being looked up by a thread, if longer than a long
+
+    // Storage
+    private final Segment[] _segments;
+    private final int _segmentMask;
+
+    // Counters
+    private final LongAdder _hitCount;
+    private final LongAdder _missCount;
+    private final LongAdder _evictionCount;
+    private final LongAdder _bypassCount;
+
+    /**
+     * Constructor
+     * @param predictor     Predictor of the samples missing from the cache.
+     * @param attrOptions   Attribute i of the samples ranges in [0, attrOptions[i]).
+     * @param capacity      Most predictions kept, rounded up to a power of two of at least PROBE_LIMIT per segment.
+     */
+    public PredictionCache(final Predictor predictor, final int[] attrOptions, final int capacity){
+        if(capacity < 1 || capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Capacity must be within [1, " + MAX_CAPACITY + "]!");
+
+        this._predictor = predictor;
+        this._attrCount = attrOptions.length;
+        this._attrOptions = attrOptions.clone();
+        this._attrBits = new int[_attrCount];
+        int keyBits = 0;
+        for(int i = 0; i < _attrCount; i++){
+            if(attrOptions[i] < 1)
+                throw new IllegalArgumentException("Attribute #" + (i + 1) + " has no option!");
+            _attrBits[i] = PackedKeys.bitsOf(attrOptions[i]);
+            keyBits += _attrBits[i];
+        }
+        this._keyWords = PackedKeys.wordsOf(keyBits);
+        this._scratchKey = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() {
+                return new long[_keyWords];
+            }
+        };
+
+        int segmentCapacity = Integer.highestOneBit(Math.max(PROBE_LIMIT, (capacity + SEGMENT_COUNT - 1) / SEGMENT_COUNT) * 2 - 1);
+        this._segments = new Segment[SEGMENT_COUNT];
+        for(int s = 0; s < SEGMENT_COUNT; s++)
+            _segments[s] = new Segment(segmentCapacity);
+        this._segmentMask = SEGMENT_COUNT - 1;
+
+        this._hitCount = new LongAdder();
+        this._missCount = new LongAdder();
+        this._evictionCount = new LongAdder();
+        this._bypassCount = new LongAdder();
+    }
+
+    /**
+     * Predict a sample from the cache, or with the predictor on a miss, caching its prediction.
+     */
+    @Override
+    public int predictSample(final int[] sampleAttr){
+        if(inRange(sampleAttr) == false){
+            _bypassCount.increment();
+            return _predictor.predictSample(sampleAttr);
+        }
+
+        /* A single-long key is passed as is, a longer one in this thread's scratch */
+        long word = 0;
+        long[] key = null;
+        if(_keyWords == 1){
+            word = packWord(sampleAttr);
+        } else {
+            key = _scratchKey.get();
+            Arrays.fill(key, 0);
+            packKey(sampleAttr, key);
+        }
+
+        long hash = key == null ? PackedKeys.hash(word) : PackedKeys.hash(key);
+        Segment segment = _segments[(int) (hash >>> 60) & _segmentMask];
+        int label = segment.get(word, key, hash);
+        if(label != 0){
+            _hitCount.increment();
+            return label;
+        }
+
+        /* Predict outside the lock, so that misses of a segment are predicted in parallel */
+        _missCount.increment();
+        label = _predictor.predictSample(sampleAttr);
+        if(label > 0)
+            segment.put(word, key, hash, label);
+        return label;
+    }
+
+    /**
+     * @return whether a sample is within the predictor's dimension, hence can be packed into a key.
+     */
+    private boolean inRange(final int[] sampleAttr){
+        if(sampleAttr.length < _attrCount)
+            return false;
+        for(int i = 0; i < _attrCount; i++){
+            if(sampleAttr[i] < 0 || sampleAttr[i] >= _attrOptions[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Pack a sample's attributes into a key of a single long.
+     */
+    private long packWord(final int[] sampleAttr){
+        long word = 0;
+        int bit = 0;
+        for(int i = 0; i < _attrCount; i++){
+            word |= (long) sampleAttr[i] << bit;
+            bit += _attrBits[i];
+        }
+        return word;
+    }
+
+    /**
+     * Pack a sample's attributes into a zeroed key of longs.
+     */
+    private void packKey(final int[] sampleAttr, final long[] key){
+        int bit = 0;
+        for(int i = 0; i < _attrCount; i++)
+            bit = PackedKeys.pack(key, bit, sampleAttr[i], _attrBits[i]);
+    }
+
+    /**
+     * Drop every cached prediction, keeping the counters.
+     */
+    public void clear(){
+        for(Segment segment : _segments)
+            segment.clear();
+    }
+
+    /**
+     * Getters
+     */
+    public int getCapacity() {
+        return _segments.length * _segments[0]._labels.length;
+    }
+    public int getKeyWords() {
+        return _keyWords;
+    }
+    public long getHitCount() {
+        return _hitCount.sum();
+    }
+    public long getMissCount() {
+        return _missCount.sum();
+    }
+    public long getEvictionCount() {
+        return _evictionCount.sum();
+    }
+    /**
+     * @return samples out of the predictor's dimension, predicted without the cache.
+     */
+    public long getBypassCount() {
+        return _bypassCount.sum();
+    }
+    /**
+     * @return hits over lookups, or 0 before any lookup.
+     */
+    public double getHitRate() {
+        long hitCount = _hitCount.sum();
+        long lookupCount = hitCount + _missCount.sum();
+        return lookupCount > 0 ? (double) hitCount / lookupCount : 0;
+    }
+
+    /*
+     * An open-addressing table of keys and their labels, label 0 marking an empty slot.
+     */
+    private class Segment {
+        private final long[] _keys;        // Key of slot i at [i * keyWords, (i + 1) * keyWords)
+        private final int[] _labels;
+        private final boolean[] _referenced; // Whether the slot was hit since the CLOCK hand passed it
+        private final int _slotMask;
+        private int _hand;                  // Offset within a probe window the next eviction starts at
+
+        private Segment(final int capacity){
+            this._keys = new long[capacity * _keyWords];
+            this._labels = new int[capacity];
+            this._referenced = new boolean[capacity];
+            this._slotMask = capacity - 1;
+        }
+
+        /**
+         * A key is either a single long word, key being null, or a key of longs, word being ignored.
+         * @return the key's label, or 0 if not cached.
+         */
+        private synchronized int get(final long word, final long[] key, final long hash){
+            int home = (int) hash & _slotMask;
+            for(int p = 0; p < PROBE_LIMIT; p++){
+                int slot = (home + p) & _slotMask;
+                if(_labels[slot] == 0)
+                    return 0;
+                if(keyEquals(slot, word, key)){
+                    _referenced[slot] = true;
+                    return _labels[slot];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Cache a key's label in its probe window, at the first empty slot or else at CLOCK's victim.
+         * Entries are never removed but for eviction, so a probe may stop at the first empty slot.
+         */
+        private synchronized void put(final long word, final long[] key, final long hash, final int label){
+            int home = (int) hash & _slotMask;
+            for(int p = 0; p < PROBE_LIMIT; p++){
+                int slot = (home + p) & _slotMask;
+                if(_labels[slot] == 0 || keyEquals(slot, word, key)){
+                    store(slot, word, key, label);
+                    return;
+                }
+            }
+
+            /* Sweep the window from the hand, giving referenced entries a second chance */
+            int victim;
+            while(true){
+                victim = (home + _hand) & _slotMask;
+                _hand = (_hand + 1) % PROBE_LIMIT;
+                if(_referenced[victim] == false)
+                    break;
+                _referenced[victim] = false;
+            }
+            store(victim, word, key, label);
+            _evictionCount.increment();
+        }
+
+        private void store(final int slot, final long word, final long[] key, final int label){
+            if(key == null)
+                _keys[slot] = word;
+            else
+                System.arraycopy(key, 0, _keys, slot * _keyWords, _keyWords);
+            _labels[slot] = label;
+            _referenced[slot] = false;
+        }
+
+        private boolean keyEquals(final int slot, final long word, final long[] key){
+            if(key == null)
+                return _keys[slot] == word;
+            return PackedKeys.keyEquals(_keys, slot, key);
+        }
+
+        private synchronized void clear(){
+            Arrays.fill(_labels, 0);
+            Arrays.fill(_referenced, false);
+        }
+    }
+}
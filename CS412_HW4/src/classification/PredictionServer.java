@@ -0,0 +1,265 @@
+package classification;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An HTTP server predicting samples with a trained forest, to be run as:
+ *   java classification.PredictionServer <model file> [port] [batch window in microseconds] [max batch size]
+ *                                        [max request bytes]
+ *
+ *   POST /predict  Samples in the data files' format, one per line, read by the same SampleReader as data files;
+ *                  the label is required but ignored. Answered with a predicted label per line,
+ *                  or 413 if the body is larger than the max request size.
+ *   GET /stats     Requests, samples and batches served, throughput, and p50/p99/p99.9 latency.
+ *
+ * Connections are handled by a fixed pool of threads, each blocking while its request waits in a
+ * PredictionBatcher; concurrent requests are thus coalesced into batches traversing each tree once.
+ * Latency is measured from a request's handling to its response being written, whether predicted or refused.
+ *
+ * The JDK's HTTP server writes a response's headers and body in separate packets, which Nagle's algorithm
+ * holds for the client's delayed ACK, adding tens of milliseconds to each response. main() thus turns on
+ * -Dsun.net.httpserver.nodelay=true unless given otherwise; a process embedding the server should start
+ * its JVM with it. It is read once per process and applies to all its HTTP servers, hence not set here.
+ */
+public class PredictionServer implements Closeable {
+    public static void main(String[] args) throws Exception{
+        // Before any HTTP server reads it
+        if(System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        /* Handle arguments */
+        if(args.length < 1 || args.length > 5)
+            throw new IllegalArgumentException("Arguments should contain a model-file, and optionally a port, a batch window in microseconds, a max batch size and a max request size in bytes!");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8412;
+        long windowNanos = args.length > 2 ? Long.parseLong(args[2]) * 1000 : 100 * 1000;
+        int maxBatchSize = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+        int maxRequestSize = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_MAX_REQUEST_SIZE;
+
+        RandomForest randomForest = new RandomForest(null, null, 1);
+        randomForest.loadModel(new File(args[0]));
+
+        PredictionServer predictionServer = new PredictionServer(randomForest, new InetSocketAddress(port),
+                windowNanos, maxBatchSize, HANDLER_THREADS, Runtime.getRuntime().availableProcessors());
+        predictionServer.setMaxRequestSize(maxRequestSize);
+        predictionServer.start();
+        System.out.println("Serving " + args[0] + " on port " + predictionServer.getPort());
+    }
+
+    /* Requests handled at the same time by default, so that enough of them wait to form batches */
+    private static final int HANDLER_THREADS = 64;
+    /* Largest request body read by default, in bytes */
+    private static final int DEFAULT_MAX_REQUEST_SIZE = 16 << 20;
+
+    private static final DecimalFormat DECIMAL_FORMAT = new DecimalFormat("#,##0.###");
+
+    // Serving
+    private final Classifier _classifier;
+    private final PredictionBatcher _predictionBatcher;
+    private final HttpServer _httpServer;
+    private final ExecutorService _handlerExecutor;
+    private volatile int _maxRequestSize = DEFAULT_MAX_REQUEST_SIZE;
+
+    // Counters
+    private final long _startNanos;
+    private final LongAdder _requestCount;
+    private final LongAdder _sampleCount;
+    private final LongAdder _errorCount;
+    private final LatencyHistogram _latencies;
+
+    /**
+     * Constructor, binding the port without serving yet.
+     * @param classifier        A trained classifier, only predicted with.
+     * @param windowNanos       Longest time a batch waits for more requests after its first one.
+     * @param handlerThreads    Requests handled at the same time.
+     * @param batcherThreads    Batches predicted at the same time.
+     */
+    public PredictionServer(final Classifier classifier, final InetSocketAddress address, final long windowNanos,
+                            final int maxBatchSize, final int handlerThreads, final int batcherThreads) throws IOException{
+        this._classifier = classifier;
+        this._predictionBatcher = new PredictionBatcher(classifier, windowNanos, maxBatchSize, batcherThreads);
+        this._httpServer = HttpServer.create(address, handlerThreads * 2);
+        this._handlerExecutor = Executors.newFixedThreadPool(handlerThreads);
+
+        this._startNanos = System.nanoTime();
+        this._requestCount = new LongAdder();
+        this._sampleCount = new LongAdder();
+        this._errorCount = new LongAdder();
+        this._latencies = new LatencyHistogram();
+
+        _httpServer.setExecutor(_handlerExecutor);
+        _httpServer.createContext("/predict", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handlePredict(exchange);
+            }
+        });
+        _httpServer.createContext("/stats", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, getStats());
+            }
+        });
+    }
+
+    public void start(){
+        _httpServer.start();
+    }
+
+    /**
+     * Predict the samples of a request's body through the batcher.
+     * Every request counts towards the latencies, failed ones included, so that slow errors show in them.
+     */
+    private void handlePredict(final HttpExchange exchange) throws IOException{
+        long startNanos = System.nanoTime();
+        try {
+            if("POST".equals(exchange.getRequestMethod()) == false){
+                _errorCount.increment();
+                respond(exchange, 405, "Samples should be POSTed!\n");
+                return;
+            }
+
+            int[] predictedLabels;
+            try(InputStream inputStream = exchange.getRequestBody()){
+                byte[] body = inputStream.readNBytes(_maxRequestSize + 1);
+                if(body.length > _maxRequestSize){
+                    _errorCount.increment();
+                    respond(exchange, 413, "Request larger than " + _maxRequestSize + " bytes!\n");
+                    return;
+                }
+                int[][] samples = parseSamples(body, _classifier.getAttrCount());
+                predictedLabels = _predictionBatcher.predict(samples);
+                _sampleCount.add(samples.length);
+            } catch (IllegalArgumentException e) {
+                _errorCount.increment();
+                respond(exchange, 400, e.getMessage() + "\n");
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                _errorCount.increment();
+                respond(exchange, 503, "Interrupted!\n");
+                return;
+            } catch (ExecutionException | IllegalStateException e) {
+                _errorCount.increment();
+                respond(exchange, 500, "Prediction failed: " + e.getMessage() + "\n");
+                return;
+            }
+
+            StringBuilder response = new StringBuilder(predictedLabels.length * 3);
+            for(int predictedLabel : predictedLabels)
+                response.append(predictedLabel).append('\n');
+            respond(exchange, 200, response.toString());
+        } finally {
+            _requestCount.increment();
+            _latencies.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException{
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try(OutputStream outputStream = exchange.getResponseBody()){
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Parse samples in the data files' format, "label idx:val idx:val ...", one per line, with SampleReader.
+     * Attributes absent from a line are 0, as in the data files.
+     * @throws IllegalArgumentException if a line is malformed or has attributes beyond the model's.
+     */
+    static int[][] parseSamples(final byte[] body, final int attrCount){
+        int[][] samples = new int[16][];
+        int sampleCount = 0;
+        SampleReader sampleReader = new SampleReader(new ByteArrayInputStream(body)); // Holds nothing to close
+        try {
+            while(sampleReader.next()){
+                if(sampleReader.getRowAttrCount() > attrCount)
+                    throw new IllegalArgumentException("Attribute index " + sampleReader.getRowAttrCount() + " is out of the model's range!");
+
+                if(sampleCount == samples.length)
+                    samples = Arrays.copyOf(samples, sampleCount * 2);
+                samples[sampleCount++] = Arrays.copyOf(sampleReader.getAttrs(), attrCount);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed sample #" + (sampleCount + 1) + "!");
+        }
+        return Arrays.copyOf(samples, sampleCount);
+    }
+
+    /**
+     * Stop serving, letting the requests being handled finish for at most a second.
+     */
+    @Override
+    public void close(){
+        _httpServer.stop(1);
+        _handlerExecutor.shutdown();
+        _predictionBatcher.close();
+    }
+
+    /**
+     * Setters
+     */
+    /**
+     * @param maxRequestSize    Largest request body predicted, in bytes; larger ones are answered with 413.
+     */
+    public void setMaxRequestSize(final int maxRequestSize) {
+        if(maxRequestSize < 0 || maxRequestSize == Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Max request size must be within [0, " + (Integer.MAX_VALUE - 1) + "]!");
+        this._maxRequestSize = maxRequestSize;
+    }
+
+    /**
+     * Getters
+     */
+    public int getPort() {
+        return _httpServer.getAddress().getPort();
+    }
+    public LatencyHistogram getLatencies() {
+        return _latencies;
+    }
+    public long getRequestCount() {
+        return _requestCount.sum();
+    }
+    /**
+     * @return a report of the counters since the server was created.
+     */
+    public String getStats() {
+        double seconds = Math.max(1, System.nanoTime() - _startNanos) / 1e9;
+        long requestCount = _requestCount.sum();
+        long sampleCount = _sampleCount.sum();
+        long batchCount = _predictionBatcher.getBatchCount();
+
+        StringBuilder report = new StringBuilder();
+        report.append("Uptime:\t").append(DECIMAL_FORMAT.format(seconds)).append(" s\n");
+        report.append("Requests:\t").append(requestCount).append('\n');
+        report.append("Errors:\t").append(_errorCount.sum()).append('\n');
+        report.append("Samples:\t").append(sampleCount).append('\n');
+        report.append("Batches:\t").append(batchCount).append('\n');
+        report.append("Mean batch size:\t")
+                .append(DECIMAL_FORMAT.format(batchCount > 0 ? (double) _predictionBatcher.getBatchedSampleCount() / batchCount : 0)).append('\n');
+        report.append("Requests per second:\t").append(DECIMAL_FORMAT.format(requestCount / seconds)).append('\n');
+        report.append("Samples per second:\t").append(DECIMAL_FORMAT.format(sampleCount / seconds)).append('\n');
+        report.append("p50 latency:\t").append(DECIMAL_FORMAT.format(_latencies.getPercentile(0.5) / 1e3)).append(" us\n");
+        report.append("p99 latency:\t").append(DECIMAL_FORMAT.format(_latencies.getPercentile(0.99) / 1e3)).append(" us\n");
+        report.append("p99.9 latency:\t").append(DECIMAL_FORMAT.format(_latencies.getPercentile(0.999) / 1e3)).append(" us\n");
+        return report.toString();
+    }
+}
@@ -0,0 +1,12 @@
+package classification;
+
+/**
+ * A trained model that predicts the label of a sample.
+ */
+public interface Predictor {
+    /**
+     * Predict a sample's label.
+     * @param sampleAttr    The sample's attribute values, indexed from 0.
+     */
+    int predictSample(final int[] sampleAttr);
+}
@@ -1,136 +1,507 @@
-package classification;
-
-import java.util.ArrayList;
-import java.util.Collections;
-
-/**
- * Created by nacos on 11/16/2016.
- */
-public class RandomForest extends Classifier{
-
-    public static void main(String[] args) throws Exception{
-        /* Handle arguments */
-        if(args.length != 2)
-            throw new IllegalArgumentException("Arguments should contain a train-file and a test-file!");
-
-        RandomForest randomForest = new RandomForest(args[0], args[1], 100);
-
-        randomForest.readDataFromFiles();
-
-        randomForest.train();
-
-        //randomForest.printRFStructure();
-
-        randomForest.evaluateQuality();
-
-        final int[][] matrix = randomForest.getConfusionMatrix();
-        int k = randomForest.getLabelOptions();
-        for(int i = 0; i < k; i++){
-            for(int j = 0; j < k; j++){
-                System.out.print(matrix[i][j] + "\t");
-            }
-            System.out.println();
-        }
-        return;
-    }
-
-    // Configuration
-    private int _forestSize;
-
-    // Classifier
-    private ArrayList<DecisionTreeKernel> _decisionTreeKernels;
-
-    /**
-     * Constructor
-     */
-    public RandomForest(final String trainFileName, final String testFileName, final int forestSize){
-        super(trainFileName, testFileName);
-
-        if(forestSize <= 0){
-            throw new IllegalArgumentException("Forest size must be positive!");
-        }
-        this._forestSize = forestSize;
-    }
-
-    /**
-     * Step 3. Implement Ensemble Classification Method
-     * Train a random forest from training data.
-     */
-    @Override
-    public int train() throws Exception{
-        if(_trainSampleSize <= 0){
-            throw new Exception("Please read valid train and test data before training random forest!");
-        }
-
-        /* Seperately train each decision tree kernel */
-        _decisionTreeKernels = new ArrayList<>(_forestSize);
-
-        // Training data's indexes to shuffle
-        ArrayList<Integer> trainSampleIndexesToShuffle = new ArrayList<>(_trainSampleSize);
-        for(int j = 0; j < _trainSampleSize; j++)
-            trainSampleIndexesToShuffle.add(j);
-
-        for(int i = 0; i < _forestSize; i++){
-            /* TODO: Make a bootstrap of the training samples */
-            ArrayList<Integer> trainLabels = new ArrayList<>(_trainSampleSize);
-            ArrayList<int[]> trainAttrs = new ArrayList<>(_trainSampleSize);
-
-            // Shuffle the training data's indexes
-            Collections.shuffle(trainSampleIndexesToShuffle);
-
-            // Re-organize the training sample according to shuffled indexes
-            for(int j = 0; j < _trainSampleSize; j++){
-                int sampleIndex = trainSampleIndexesToShuffle.get(j);
-                trainLabels.add(_trainLabels.get(sampleIndex));
-                trainAttrs.add(_trainAttrs.get(sampleIndex));
-            }
-
-            DecisionTreeKernel decisionTreeKernel = new DecisionTreeKernel(true,
-                    _labelOptions, _attrCount, _attrOptions,
-                    _trainSampleSize, trainLabels, trainAttrs);
-            decisionTreeKernel.train();
-
-            _decisionTreeKernels.add(decisionTreeKernel);
-        }
-        return 0;
-    }
-
-    /**
-     * Use the trained decision tree to predict a sample's label
-     */
-    @Override
-    public int predictSample(final int[] sampleAttr){
-        /* Check if random forest not grown */
-        if(_decisionTreeKernels.size() == 0){
-            System.err.println("Random Forest must be trained before it can predict any sample!");
-            return -1;
-        }
-
-        /* Record every decision tree's prediction */
-        int[] candidates = new int[_labelOptions];
-        for(int i = 0; i < _forestSize; i++){
-            int prediction = _decisionTreeKernels.get(i).predictSample(sampleAttr);
-            candidates[prediction - 1]++;
-        }
-
-        /* Select the prediction with most votes */
-        int maxVotes = 0;
-        int maxVoteIndex = 0;
-        for(int i = 0; i < _labelOptions; i++){
-            if(candidates[i] > maxVotes){
-                maxVoteIndex = i;
-                maxVotes = candidates[i];
-            }
-        }
-
-        return maxVoteIndex + 1;
-    }
-
-    public void printRFStructure(){
-        for(int i = 0; i < _forestSize; i++){
-            System.out.println("=== DT " + i + " ===");
-            _decisionTreeKernels.get(i).printDTStructure();
-            System.out.println();
-        }
-    }
-}
+package classification;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Created by nacos on 11/16/2016.
+ */
+public class RandomForest extends Classifier implements Predictor{
+
+    public static void main(String[] args) throws Exception{
+        /* Handle arguments */
+        if(args.length != 2)
+            throw new IllegalArgumentException("Arguments should contain a train-file and a test-file!");
+
+        RandomForest randomForest = new RandomForest(args[0], args[1], 100);
+
+        randomForest.readDataFromFiles();
+
+        randomForest.train();
+        if(TrainingStats.ENABLED)
+            System.out.print(randomForest.getTrainingStats());
+
+        //randomForest.printRFStructure();
+
+        randomForest.evaluateQuality();
+
+        final int[][] matrix = randomForest.getConfusionMatrix();
+        int k = randomForest.getLabelOptions();
+        for(int i = 0; i < k; i++){
+            for(int j = 0; j < k; j++){
+                System.out.print(matrix[i][j] + "\t");
+            }
+            System.out.println();
+        }
+        return;
+    }
+
+    // Configuration
+    private int _forestSize;
+    private long _seed = System.nanoTime();
+    private double _maxSamples = 1.0; // Bootstrap size, as a fraction of the training samples
+    private boolean _computeOOB = false;
+    private GrowthLimits _growthLimits = new GrowthLimits();
+    private int _predictionCacheCapacity = 0; // Most predictions cached, or 0 for no cache
+
+    // Classifier
+    private ArrayList<DecisionTreeKernel> _decisionTreeKernels;
+    private PredictionCache _predictionCache;
+
+    // Bootstrap of weighted samples, null when each sample counts once
+    private AliasTable _weightedDraw;
+
+    // Out-of-bag estimation
+    private AtomicIntegerArray _oobVotes; // Votes of the trees not trained on each sample, [sample * labelOptions + label - 1]
+    private int[][] _oobConfusionMatrix;
+    private int _oobSampleSize;
+
+    // Instrumentation, only while TrainingStats.ENABLED
+    private TrainingStats _trainingStats;
+
+    /**
+     * Constructor
+     */
+    public RandomForest(final String trainFileName, final String testFileName, final int forestSize){
+        super(trainFileName, testFileName);
+
+        if(forestSize <= 0){
+            throw new IllegalArgumentException("Forest size must be positive!");
+        }
+        this._forestSize = forestSize;
+    }
+
+    /**
+     * Step 3. Implement Ensemble Classification Method
+     * Train a random forest from training data.
+     */
+    @Override
+    public int train() throws Exception{
+        if(_trainSampleSize <= 0){
+            throw new Exception("Please read valid train and test data before training random forest!");
+        }
+
+        long trainStart = TrainingStats.ENABLED ? System.nanoTime() : 0;
+
+        /* Derive each tree's own random from the master seed, in tree order,
+           so the forest is the same however many threads train it */
+        SplittableRandom masterRandom = new SplittableRandom(_seed);
+        _oobVotes = _computeOOB ? new AtomicIntegerArray(_trainSampleSize * _labelOptions) : null;
+        _oobConfusionMatrix = null;
+        _oobSampleSize = 0;
+        _weightedDraw = _trainData.getWeights() != null ? new AliasTable(_trainData.getWeights()) : null;
+        SplittableRandom[] treeRandoms = new SplittableRandom[_forestSize];
+        for(int i = 0; i < _forestSize; i++)
+            treeRandoms[i] = masterRandom.split();
+
+        /* Seperately train each decision tree kernel on the executor */
+        ArrayList<Future<DecisionTreeKernel>> trainingTrees = new ArrayList<>(_forestSize);
+        for(int i = 0; i < _forestSize; i++){
+            final SplittableRandom treeRandom = treeRandoms[i];
+            trainingTrees.add(_executor.submit(new Callable<DecisionTreeKernel>() {
+                @Override
+                public DecisionTreeKernel call() throws Exception {
+                    return trainTree(treeRandom);
+                }
+            }));
+        }
+
+        _decisionTreeKernels = new ArrayList<>(_forestSize);
+        try {
+            for(Future<DecisionTreeKernel> trainingTree : trainingTrees)
+                _decisionTreeKernels.add(trainingTree.get());
+        } catch (ExecutionException e) {
+            for(Future<DecisionTreeKernel> trainingTree : trainingTrees)
+                trainingTree.cancel(true);
+            throw new Exception("Failed to train random forest!", e.getCause());
+        } finally {
+            _weightedDraw = null;
+        }
+
+        if(TrainingStats.ENABLED){
+            _trainingStats = new TrainingStats();
+            for(DecisionTreeKernel decisionTreeKernel : _decisionTreeKernels)
+                _trainingStats.merge(decisionTreeKernel.getTrainingStats());
+            _trainingStats.setTrainNanos(System.nanoTime() - trainStart);
+        }
+
+        if(_computeOOB){
+            tallyOOBVotes();
+            _oobVotes = null;
+        }
+        resetPredictionCache();
+        return 0;
+    }
+
+    /**
+     * Train a single decision tree of the forest.
+     * @param treeRandom    The tree's own random, for both its bootstrap and its attribute selection.
+     */
+    private DecisionTreeKernel trainTree(final SplittableRandom treeRandom) throws Exception{
+        Column bootstrap = drawBootstrap(treeRandom);
+        DecisionTreeKernel decisionTreeKernel = new DecisionTreeKernel(true, _trainData, bootstrap, treeRandom);
+        decisionTreeKernel.setGrowthLimits(_growthLimits);
+        decisionTreeKernel.train();
+        if(_oobVotes != null)
+            voteOutOfBag(decisionTreeKernel, bootstrap, treeRandom);
+        return decisionTreeKernel;
+    }
+
+    /**
+     * Let a trained tree vote on the samples left out of its bootstrap.
+     * Votes are added atomically, so trees training at the same time may vote at once.
+     *
+     * A weighted sample stands for identical samples, some of which may be left out even if it is drawn:
+     * it votes once for each of them, as many as its draws would leave out had they been drawn among the copies.
+     */
+    private void voteOutOfBag(final DecisionTreeKernel decisionTreeKernel, final Column bootstrap,
+                              final SplittableRandom treeRandom){
+        Column weights = _trainData.getWeights();
+        for(int i = 0; i < _trainSampleSize; i++){
+            int leftOut;
+            if(weights == null){
+                leftOut = bootstrap.get(i) == 0 ? 1 : 0;
+            } else {
+                /* Each draw takes a copy not taken yet with the chance of how many are left */
+                int weight = weights.get(i);
+                int drawCount = bootstrap.get(i);
+                leftOut = weight;
+                for(int d = 0; d < drawCount && leftOut > 0; d++){
+                    if(treeRandom.nextInt(weight) < leftOut)
+                        leftOut--;
+                }
+            }
+            if(leftOut == 0)
+                continue;
+            int prediction = decisionTreeKernel.predictSample(_trainData, i);
+            _oobVotes.addAndGet(i * _labelOptions + prediction - 1, leftOut);
+        }
+    }
+
+    /**
+     * Build the out-of-bag confusion matrix from the trees' votes,
+     * over the samples left out by at least one tree, each counting with its weight.
+     * The copies a weighted sample stands for are all taken by the majority of the votes on any of them.
+     */
+    private void tallyOOBVotes(){
+        _oobConfusionMatrix = new int[_labelOptions][_labelOptions];
+        _oobSampleSize = 0;
+        for(int i = 0; i < _trainSampleSize; i++){
+            int maxVotes = 0;
+            int maxVoteIndex = 0;
+            for(int j = 0; j < _labelOptions; j++){
+                int votes = _oobVotes.get(i * _labelOptions + j);
+                if(votes > maxVotes){
+                    maxVoteIndex = j;
+                    maxVotes = votes;
+                }
+            }
+            if(maxVotes == 0)
+                continue;
+
+            int weight = _trainData.getWeight(i);
+            _oobConfusionMatrix[_trainData.getLabel(i) - 1][maxVoteIndex] += weight;
+            _oobSampleSize += weight;
+        }
+    }
+
+    /**
+     * Make a bootstrap of the training samples: draw maxSamples * n samples with replacement,
+     * as how many times each sample is drawn rather than copies of the samples.
+     * Weighted samples are drawn in proportion to their weights, as if each were that many samples.
+     * @return each sample's multiplicity, in bytes unless samples are weighted, as a collapsed sample
+     *         may be drawn far more than 255 times.
+     */
+    private Column drawBootstrap(final SplittableRandom treeRandom){
+        AliasTable weightedDraw = _weightedDraw;
+        if(weightedDraw == null){
+            Column multiplicities = Column.allocateWidth(1, _trainSampleSize);
+            long drawCount = Math.max(1, Math.round(_maxSamples * _trainSampleSize));
+            for(long d = 0; d < drawCount; d++){
+                int sampleIndex = treeRandom.nextInt(_trainSampleSize);
+                int multiplicity = multiplicities.get(sampleIndex);
+                // A multiplicity saturating a byte is all but impossible; draw again rather than overflow
+                if(multiplicity == 0xFF){
+                    d--;
+                    continue;
+                }
+                multiplicities.set(sampleIndex, multiplicity + 1);
+            }
+            return multiplicities;
+        }
+
+        Column multiplicities = Column.allocateWidth(4, _trainSampleSize);
+        long drawCount = Math.max(1, Math.round(_maxSamples * weightedDraw._totalWeight));
+        for(long d = 0; d < drawCount; d++){
+            int sampleIndex = weightedDraw.draw(treeRandom);
+            multiplicities.set(sampleIndex, multiplicities.get(sampleIndex) + 1);
+        }
+        return multiplicities;
+    }
+
+    /**
+     * Save the trained forest to a model file.
+     */
+    public void saveModel(final File modelFile) throws Exception{
+        if(_decisionTreeKernels == null || _decisionTreeKernels.size() == 0)
+            throw new Exception("Random Forest must be trained before it can be saved!");
+        ModelFile.save(modelFile, ModelFile.KIND_RANDOM_FOREST, _decisionTreeKernels);
+    }
+
+    /**
+     * Load a forest saved by saveModel() in place of training one, taking its forest size.
+     * Test data can then be read and evaluated as usual.
+     */
+    public void loadModel(final File modelFile) throws Exception{
+        _decisionTreeKernels = new ArrayList<>(ModelFile.load(modelFile, ModelFile.KIND_RANDOM_FOREST));
+        _forestSize = _decisionTreeKernels.size();
+        DecisionTreeKernel first = _decisionTreeKernels.get(0);
+        setModelMetadata(first.getLabelOptions(), first.getAttrCount(), first.getAttrOptions());
+        _oobConfusionMatrix = null;
+        _oobSampleSize = 0;
+        resetPredictionCache();
+    }
+
+    /**
+     * Start the prediction cache afresh for the forest just trained or loaded, if enabled.
+     */
+    private void resetPredictionCache(){
+        if(_predictionCacheCapacity == 0 || _decisionTreeKernels == null){
+            _predictionCache = null;
+            return;
+        }
+        _predictionCache = new PredictionCache(new Predictor() {
+            @Override
+            public int predictSample(final int[] sampleAttr) {
+                return voteSample(sampleAttr);
+            }
+        }, _attrOptions, _predictionCacheCapacity);
+    }
+
+    /**
+     * Use the trained decision tree to predict a sample's label, from the prediction cache if enabled
+     */
+    @Override
+    public int predictSample(final int[] sampleAttr){
+        if(_predictionCache != null)
+            return _predictionCache.predictSample(sampleAttr);
+        return voteSample(sampleAttr);
+    }
+
+    /**
+     * Predict a sample's label by the votes of every tree.
+     */
+    private int voteSample(final int[] sampleAttr){
+        /* Check if random forest not grown */
+        if(_decisionTreeKernels.size() == 0){
+            System.err.println("Random Forest must be trained before it can predict any sample!");
+            return -1;
+        }
+
+        /* Record every decision tree's prediction */
+        int[] candidates = new int[_labelOptions];
+        for(int i = 0; i < _forestSize; i++){
+            int prediction = _decisionTreeKernels.get(i).predictSample(sampleAttr);
+            candidates[prediction - 1]++;
+        }
+
+        /* Select the prediction with most votes */
+        int maxVotes = 0;
+        int maxVoteIndex = 0;
+        for(int i = 0; i < _labelOptions; i++){
+            if(candidates[i] > maxVotes){
+                maxVoteIndex = i;
+                maxVotes = candidates[i];
+            }
+        }
+
+        return maxVoteIndex + 1;
+    }
+
+    /**
+     * Predict the labels of a block of samples, tree by tree: each tree predicts the whole block
+     * while its nodes stay in cache, adding its votes to the block's vote counts.
+     * @param samples   Samples of which [sampleOffset, sampleOffset + sampleCount) are predicted.
+     * @param votes     Reusable scratch of at least sampleCount * labelOptions ints.
+     * @param predictedLabels   Output of at least sampleCount labels.
+     */
+    @Override
+    public void predictBatch(final Dataset samples, final int sampleOffset, final int sampleCount,
+                             final int[] votes, final int[] predictedLabels){
+        /* Check if random forest not grown */
+        if(_decisionTreeKernels == null || _decisionTreeKernels.size() == 0)
+            throw new IllegalStateException("Random Forest must be trained before it can predict any sample!");
+
+        /* Look every sample up in the cache if enabled, predicting only the misses */
+        if(_predictionCache != null){
+            int[] sampleAttr = new int[_attrCount];
+            for(int i = 0; i < sampleCount; i++)
+                predictedLabels[i] = _predictionCache.predictSample(samples.getSample(sampleOffset + i, sampleAttr));
+            return;
+        }
+
+        /* Record every decision tree's prediction, using the output as each tree's scratch */
+        Arrays.fill(votes, 0, sampleCount * _labelOptions, 0);
+        for(int t = 0; t < _forestSize; t++){
+            _decisionTreeKernels.get(t).predictBatch(samples, sampleOffset, sampleCount, predictedLabels);
+            for(int i = 0; i < sampleCount; i++){
+                votes[i * _labelOptions + predictedLabels[i] - 1]++;
+            }
+        }
+
+        /* Select the prediction with most votes */
+        for(int i = 0; i < sampleCount; i++){
+            int maxVotes = 0;
+            int maxVoteIndex = 0;
+            for(int j = 0; j < _labelOptions; j++){
+                if(votes[i * _labelOptions + j] > maxVotes){
+                    maxVoteIndex = j;
+                    maxVotes = votes[i * _labelOptions + j];
+                }
+            }
+            predictedLabels[i] = maxVoteIndex + 1;
+        }
+    }
+
+    /**
+     * Getters
+     */
+    /**
+     * @return the confusion matrix of the out-of-bag predictions of the training samples, which
+     *         ModelEvaluation.matrixToPerformance() takes; null unless trained with setComputeOOB(true).
+     */
+    public int[][] getOOBConfusionMatrix() {
+        return _oobConfusionMatrix;
+    }
+    /**
+     * @return the number of training samples left out by at least one tree, i.e. counted by the OOB confusion matrix.
+     */
+    public int getOOBSampleSize() {
+        return _oobSampleSize;
+    }
+    /**
+     * @return the stats of all trees of the last training, or null unless TrainingStats.ENABLED.
+     */
+    public TrainingStats getTrainingStats() {
+        return _trainingStats;
+    }
+    /**
+     * @return the prediction cache with its hit counters, or null if disabled or not trained.
+     */
+    public PredictionCache getPredictionCache() {
+        return _predictionCache;
+    }
+
+    /**
+     * Setters
+     */
+    public void setSeed(final long seed) {
+        this._seed = seed;
+    }
+    /**
+     * @param maxSamples    Size of each tree's bootstrap, as a fraction in (0, 1] of the training samples.
+     */
+    public void setMaxSamples(final double maxSamples) {
+        if(maxSamples <= 0 || maxSamples > 1)
+            throw new IllegalArgumentException("Max samples must be within (0, 1]!");
+        this._maxSamples = maxSamples;
+    }
+    /**
+     * @param computeOOB    Whether training also estimates the forest's quality on each tree's out-of-bag samples.
+     */
+    public void setComputeOOB(final boolean computeOOB) {
+        this._computeOOB = computeOOB;
+    }
+    /**
+     * @param growthLimits  Stopping criteria of every tree of the forest.
+     */
+    public void setGrowthLimits(final GrowthLimits growthLimits) {
+        this._growthLimits = growthLimits;
+    }
+    /**
+     * @param predictionCacheCapacity   Most predictions cached in front of the trees, or 0 for no cache.
+     *                                  The cache starts empty whenever the forest is trained or loaded.
+     */
+    public void setPredictionCacheCapacity(final int predictionCacheCapacity) {
+        if(predictionCacheCapacity < 0)
+            throw new IllegalArgumentException("Prediction cache capacity must not be negative!");
+        this._predictionCacheCapacity = predictionCacheCapacity;
+        resetPredictionCache();
+    }
+
+    public void printRFStructure(){
+        for(int i = 0; i < _forestSize; i++){
+            System.out.println("=== DT " + i + " ===");
+            _decisionTreeKernels.get(i).printDTStructure();
+            System.out.println();
+        }
+    }
+
+    /*
+     * Draws of samples in proportion to their weights in constant time, by Vose's alias method in integers:
+     * each sample owns a column of totalWeight, of which it keeps its threshold and gives the rest to its alias.
+     */
+    private static final class AliasTable {
+        private final int _totalWeight;
+        private final int[] _thresholds;
+        private final int[] _aliases;
+
+        private AliasTable(final Column weights){
+            int sampleSize = weights.size();
+            long totalWeight = 0;
+            for(int i = 0; i < sampleSize; i++)
+                totalWeight += weights.get(i);
+            if(totalWeight > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Too many weighted samples to draw from!");
+            this._totalWeight = (int) totalWeight;
+            this._thresholds = new int[sampleSize];
+            this._aliases = new int[sampleSize];
+
+            /* Scale weights by the sample size, so that every column is totalWeight; pair underfull with overfull */
+            long[] scaled = new long[sampleSize];
+            int[] small = new int[sampleSize];
+            int[] large = new int[sampleSize];
+            int smallSize = 0;
+            int largeSize = 0;
+            for(int i = 0; i < sampleSize; i++){
+                scaled[i] = (long) weights.get(i) * sampleSize;
+                if(scaled[i] < totalWeight)
+                    small[smallSize++] = i;
+                else
+                    large[largeSize++] = i;
+            }
+            while(smallSize > 0 && largeSize > 0){
+                int less = small[--smallSize];
+                int more = large[--largeSize];
+                _thresholds[less] = (int) scaled[less];
+                _aliases[less] = more;
+                scaled[more] -= totalWeight - scaled[less];
+                if(scaled[more] < totalWeight)
+                    small[smallSize++] = more;
+                else
+                    large[largeSize++] = more;
+            }
+            while(largeSize > 0){
+                int more = large[--largeSize];
+                _thresholds[more] = _totalWeight;
+                _aliases[more] = more;
+            }
+            while(smallSize > 0){
+                int less = small[--smallSize];
+                _thresholds[less] = _totalWeight;
+                _aliases[less] = less;
+            }
+        }
+
+        private int draw(final SplittableRandom random){
+            int column = random.nextInt(_thresholds.length);
+            return random.nextInt(_totalWeight) < _thresholds[column] ? column : _aliases[column];
+        }
+    }
+}
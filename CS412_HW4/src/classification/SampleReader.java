@@ -0,0 +1,198 @@
+package classification;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A byte-level reader of the "label idx:val idx:val ..." sample format, one sample per line.
+ * It decodes numbers straight from the input bytes, so no String or array is allocated per line or token.
+ * Attributes absent from a line are 0, as attribute indexes start from 1.
+ * The input is either a stream, or a byte range of a file channel so that several readers can share one file.
+ */
+public class SampleReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Input
+    private final InputStream _inputStream;
+    private final FileChannel _channel;
+    private long _channelPosition;
+    private final long _channelEnd;
+    private final byte[] _buffer;
+    private int _position;
+    private int _limit;
+
+    // Current sample
+    private int _label;
+    private int[] _attrs;
+    private int _rowAttrCount;
+
+    /**
+     * Constructor
+     */
+    public SampleReader(final InputStream inputStream){
+        this._inputStream = inputStream;
+        this._channel = null;
+        this._channelPosition = 0;
+        this._channelEnd = 0;
+        this._buffer = new byte[BUFFER_SIZE];
+        this._position = 0;
+        this._limit = 0;
+
+        this._attrs = new int[16];
+        this._rowAttrCount = 0;
+    }
+
+    /**
+     * Constructor reading the samples within [start, end) of a file channel.
+     * The range should start at the beginning of a line; the channel is left open on close().
+     */
+    public SampleReader(final FileChannel channel, final long start, final long end){
+        this._inputStream = null;
+        this._channel = channel;
+        this._channelPosition = start;
+        this._channelEnd = end;
+        this._buffer = new byte[BUFFER_SIZE];
+        this._position = 0;
+        this._limit = 0;
+
+        this._attrs = new int[16];
+        this._rowAttrCount = 0;
+    }
+
+    /**
+     * Advance to the next sample, skipping blank lines.
+     * @return false if the input is exhausted.
+     */
+    public boolean next() throws IOException{
+        /* Reset attributes of the previous sample */
+        for(int i = 0; i < _rowAttrCount; i++)
+            _attrs[i] = 0;
+        _rowAttrCount = 0;
+
+        /* Skip blank lines */
+        int c = peek();
+        while(c == ' ' || c == '\t' || c == '\r' || c == '\n'){
+            _position++;
+            c = peek();
+        }
+        if(c == -1)
+            return false;
+
+        /* Label */
+        _label = readNumber();
+
+        /* Pairs of "index:value" until the end of line */
+        while(true){
+            c = peek();
+            while(c == ' ' || c == '\t' || c == '\r'){
+                _position++;
+                c = peek();
+            }
+            if(c == -1)
+                break;
+            if(c == '\n'){
+                _position++;
+                break;
+            }
+
+            int attrIndex = readNumber();
+            if(peek() != ':' || attrIndex < 1)
+                throw new IOException("Data corruption!");
+            _position++;
+            int attrValue = readNumber();
+
+            if(attrIndex > _attrs.length){
+                int[] attrs = new int[Math.max(attrIndex, _attrs.length * 2)];
+                System.arraycopy(_attrs, 0, attrs, 0, _attrs.length);
+                _attrs = attrs;
+            }
+            _attrs[attrIndex - 1] = attrValue;
+            if(attrIndex > _rowAttrCount)
+                _rowAttrCount = attrIndex;
+        }
+        return true;
+    }
+
+    /**
+     * Parse a non-negative decimal integer at the current position.
+     */
+    private int readNumber() throws IOException{
+        int c = peek();
+        if(c < '0' || c > '9')
+            throw new IOException("Data corruption!");
+
+        int number = 0;
+        do {
+            if(number > (Integer.MAX_VALUE - 9) / 10)
+                throw new IOException("Data corruption!");
+            number = number * 10 + (c - '0');
+            _position++;
+            c = peek();
+        } while(c >= '0' && c <= '9');
+        return number;
+    }
+
+    /**
+     * Look at the byte at the current position, refilling the buffer if needed.
+     * @return the byte, or -1 at the end of input.
+     */
+    private int peek() throws IOException{
+        if(_position == _limit){
+            _limit = fill();
+            _position = 0;
+            if(_limit <= 0){
+                _limit = 0;
+                return -1;
+            }
+        }
+        return _buffer[_position];
+    }
+
+    /**
+     * Read the next block of input into the buffer.
+     * @return number of bytes read, or -1 at the end of input.
+     */
+    private int fill() throws IOException{
+        if(_channel == null)
+            return _inputStream.read(_buffer, 0, _buffer.length);
+
+        int length = (int) Math.min(_buffer.length, _channelEnd - _channelPosition);
+        if(length <= 0)
+            return -1;
+        ByteBuffer byteBuffer = ByteBuffer.wrap(_buffer, 0, length);
+        while(byteBuffer.hasRemaining()){
+            if(_channel.read(byteBuffer, _channelPosition + byteBuffer.position()) < 0)
+                break;
+        }
+        _channelPosition += byteBuffer.position();
+        return byteBuffer.position() > 0 ? byteBuffer.position() : -1;
+    }
+
+    @Override
+    public void close() throws IOException{
+        if(_inputStream != null)
+            _inputStream.close();
+    }
+
+    /**
+     * Getters of the current sample
+     */
+    public int getLabel() {
+        return _label;
+    }
+    /**
+     * @return the sample's attributes, valid up to getRowAttrCount(). The array is reused by next().
+     */
+    public int[] getAttrs() {
+        return _attrs;
+    }
+    /**
+     * @return the largest attribute index present in the sample.
+     */
+    public int getRowAttrCount() {
+        return _rowAttrCount;
+    }
+}
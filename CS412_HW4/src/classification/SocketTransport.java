@@ -0,0 +1,41 @@
+package classification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Transport over a TCP connection, to a HistogramWorker listening on a port of this host,
+ * or of another host if the worker was given a bind address reachable from here.
+ */
+public class SocketTransport implements Transport {
+    private final Socket _socket;
+
+    /**
+     * Constructor
+     */
+    public SocketTransport(final Socket socket) throws IOException{
+        this._socket = socket;
+        _socket.setTcpNoDelay(true);
+    }
+
+    public static SocketTransport connect(final String host, final int port) throws IOException{
+        return new SocketTransport(new Socket(host, port));
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException{
+        return _socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException{
+        return _socket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException{
+        _socket.close();
+    }
+}
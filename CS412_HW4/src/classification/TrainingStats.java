@@ -0,0 +1,268 @@
+package classification;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Instrumentation of decision tree training: time per growth phase, nodes, leaves and leaf depths of the trees,
+ * and samples trained per second. Trees and phases are also emitted as JFR events while recorded.
+ *
+ * Enabled with -Dclassification.trainingStats=true. Otherwise ENABLED is a constant false
+ * and every guarded call is compiled away.
+ *
+ * Phase times are summed over all threads growing a tree, so they may add up to more than its wall time;
+ * recursion is the rest of a tree's time, spent on bookkeeping and creating and joining children.
+ */
+public class TrainingStats {
+    public static final boolean ENABLED = Boolean.getBoolean("classification.trainingStats");
+
+    /* Growth phases of a node */
+    public static final int PHASE_AVC = 0;        // Counting and deriving AVC-sets
+    public static final int PHASE_GINI = 1;       // Evaluating the Gini index of each candidate attribute
+    public static final int PHASE_PARTITION = 2;  // Partitioning the node's samples among its children
+    private static final String[] PHASE_NAMES = new String[]{"AVC", "Gini", "Partition"};
+
+    private static final DecimalFormat DECIMAL_FORMAT = new DecimalFormat("#,##0.###");
+
+    // Phase times, nanoseconds summed over threads
+    private final LongAdder[] _phaseNanos;
+    private final LongAdder _nodeSampleVisits; // Samples of every split node, i.e. samples counted over all layers
+
+    // Trees, recorded once each is grown
+    private int _treeCount;
+    private long _trainNanos;   // Wall time of training, for a forest that of all its trees together
+    private long _trainSampleSize;
+    private long _nodeCount;
+    private long _leafCount;
+    private int _maxDepth;
+    private long[] _leafDepthHistogram;
+
+    // Tree being grown, between beginTree() and endTree()
+    private TreeEvent _treeEvent;
+    private long _treeStartNanos;
+
+    /**
+     * Constructor
+     */
+    public TrainingStats(){
+        this._phaseNanos = new LongAdder[PHASE_NAMES.length];
+        for(int i = 0; i < _phaseNanos.length; i++)
+            _phaseNanos[i] = new LongAdder();
+        this._nodeSampleVisits = new LongAdder();
+        this._leafDepthHistogram = new long[0];
+    }
+
+    /**
+     * Start a phase of a node. Nodes grow on several threads at once, so each phase is handed back to its caller.
+     * @return the phase, begun as a JFR event too.
+     */
+    public PhaseEvent beginPhase(){
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        event._startNanos = System.nanoTime();
+        return event;
+    }
+
+    /**
+     * Record a phase of a node begun by beginPhase() that ends now.
+     */
+    public void endPhase(final PhaseEvent event, final int phase, final int sampleCount){
+        event.end();
+        _phaseNanos[phase].add(System.nanoTime() - event._startNanos);
+        if(phase == PHASE_AVC)
+            _nodeSampleVisits.add(sampleCount);
+
+        if(event.shouldCommit()){
+            event.phase = PHASE_NAMES[phase];
+            event.sampleCount = sampleCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * Start growing a tree, to be recorded by endTree().
+     */
+    public void beginTree(){
+        _treeEvent = new TreeEvent();
+        _treeEvent.begin();
+        _treeStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Record the tree begun by beginTree() as grown, taking its shape from its compiled node arrays.
+     */
+    public void endTree(final int trainSampleSize, final int[] splitAttrs, final int[] childBases,
+                        final int[] attrOptions, final int treeDepth){
+        _treeEvent.end();
+        long trainNanos = System.nanoTime() - _treeStartNanos;
+
+        /* Nodes are breadth-first, so a parent's depth is known before its children's */
+        int[] nodeDepths = new int[splitAttrs.length];
+        for(int i = 0; i < splitAttrs.length; i++){
+            if(splitAttrs[i] != -1){
+                for(int c = childBases[i]; c < childBases[i] + attrOptions[splitAttrs[i]]; c++)
+                    nodeDepths[c] = nodeDepths[i] + 1;
+            }
+        }
+
+        _treeCount++;
+        _trainNanos += trainNanos;
+        _trainSampleSize += trainSampleSize;
+        _nodeCount += splitAttrs.length;
+        _maxDepth = Math.max(_maxDepth, treeDepth);
+        if(_leafDepthHistogram.length <= treeDepth)
+            _leafDepthHistogram = Arrays.copyOf(_leafDepthHistogram, treeDepth + 1);
+        int leafCount = 0;
+        for(int i = 0; i < splitAttrs.length; i++){
+            if(splitAttrs[i] == -1){
+                _leafDepthHistogram[nodeDepths[i]]++;
+                leafCount++;
+            }
+        }
+        _leafCount += leafCount;
+
+        if(_treeEvent.shouldCommit()){
+            _treeEvent.trainSampleSize = trainSampleSize;
+            _treeEvent.nodeCount = splitAttrs.length;
+            _treeEvent.leafCount = leafCount;
+            _treeEvent.treeDepth = treeDepth;
+            _treeEvent.commit();
+        }
+        _treeEvent = null;
+    }
+
+    /**
+     * Add up the stats of another tree, e.g. to sum up a forest's.
+     * Training time is not added, as trees of a forest train at the same time; see setTrainNanos().
+     */
+    public void merge(final TrainingStats other){
+        for(int i = 0; i < _phaseNanos.length; i++)
+            _phaseNanos[i].add(other._phaseNanos[i].sum());
+        _nodeSampleVisits.add(other._nodeSampleVisits.sum());
+
+        _treeCount += other._treeCount;
+        _trainSampleSize += other._trainSampleSize;
+        _nodeCount += other._nodeCount;
+        _leafCount += other._leafCount;
+        _maxDepth = Math.max(_maxDepth, other._maxDepth);
+        if(_leafDepthHistogram.length < other._leafDepthHistogram.length)
+            _leafDepthHistogram = Arrays.copyOf(_leafDepthHistogram, other._leafDepthHistogram.length);
+        for(int i = 0; i < other._leafDepthHistogram.length; i++)
+            _leafDepthHistogram[i] += other._leafDepthHistogram[i];
+    }
+
+    /**
+     * Setters
+     */
+    public void setTrainNanos(final long trainNanos) {
+        this._trainNanos = trainNanos;
+    }
+
+    /**
+     * Getters
+     */
+    public long getPhaseNanos(final int phase) {
+        return _phaseNanos[phase].sum();
+    }
+    public long getNodeSampleVisits() {
+        return _nodeSampleVisits.sum();
+    }
+    public int getTreeCount() {
+        return _treeCount;
+    }
+    public long getTrainNanos() {
+        return _trainNanos;
+    }
+    public long getNodeCount() {
+        return _nodeCount;
+    }
+    public long getLeafCount() {
+        return _leafCount;
+    }
+    public int getMaxDepth() {
+        return _maxDepth;
+    }
+    /**
+     * @return the number of leaves at each depth, the root being at depth 0.
+     */
+    public long[] getLeafDepthHistogram() {
+        return _leafDepthHistogram;
+    }
+    /**
+     * @return training samples of all trees trained per second of wall time.
+     */
+    public double getSamplesPerSecond() {
+        return _trainNanos > 0 ? _trainSampleSize * 1e9 / _trainNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append("=== Training Stats ===\n");
+        report.append("Trees:\t").append(_treeCount).append('\n');
+        report.append("Wall time:\t").append(DECIMAL_FORMAT.format(_trainNanos / 1e6)).append(" ms\n");
+        report.append("Samples per second:\t").append(DECIMAL_FORMAT.format(getSamplesPerSecond())).append('\n');
+        report.append("Node sample visits:\t").append(getNodeSampleVisits()).append('\n');
+        long phasesNanos = 0;
+        for(int i = 0; i < PHASE_NAMES.length; i++){
+            long phaseNanos = _phaseNanos[i].sum();
+            phasesNanos += phaseNanos;
+            report.append(PHASE_NAMES[i]).append(" time:\t").append(DECIMAL_FORMAT.format(phaseNanos / 1e6)).append(" ms\n");
+        }
+        if(_treeCount == 1)
+            report.append("Recursion time:\t").append(DECIMAL_FORMAT.format(Math.max(0, _trainNanos - phasesNanos) / 1e6)).append(" ms\n");
+        report.append("Nodes:\t").append(_nodeCount).append('\n');
+        report.append("Leaves:\t").append(_leafCount).append('\n');
+        report.append("Max depth:\t").append(_maxDepth).append('\n');
+        report.append("Leaves by depth:");
+        for(int i = 0; i < _leafDepthHistogram.length; i++)
+            report.append('\t').append(i).append(':').append(_leafDepthHistogram[i]);
+        report.append('\n');
+        return report.toString();
+    }
+
+    /**
+     * JFR event of a grown decision tree, lasting its training.
+     */
+    @Name("classification.TreeTrained")
+    @Label("Decision Tree Trained")
+    @Category({"Classification", "Training"})
+    static class TreeEvent extends Event {
+        @Label("Train Samples")
+        int trainSampleSize;
+
+        @Label("Nodes")
+        int nodeCount;
+
+        @Label("Leaves")
+        int leafCount;
+
+        @Label("Tree Depth")
+        int treeDepth;
+    }
+
+    /**
+     * JFR event of a growth phase of a decision tree node, lasting the phase.
+     */
+    @Name("classification.TrainingPhase")
+    @Label("Decision Tree Training Phase")
+    @Description("A phase of growing a node: AVC counting, Gini evaluation or partitioning")
+    @Category({"Classification", "Training"})
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Node Samples")
+        int sampleCount;
+
+        // Start of the phase for the stats, not recorded
+        transient long _startNanos;
+    }
+}
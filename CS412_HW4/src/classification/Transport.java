@@ -0,0 +1,15 @@
+package classification;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A duplex byte stream between the coordinator and a HistogramWorker, e.g. the pipes of a worker process
+ * or a socket to a worker on another host. Closing it ends the worker's session.
+ */
+public interface Transport extends Closeable {
+    InputStream getInputStream() throws IOException;
+    OutputStream getOutputStream() throws IOException;
+}
@@ -0,0 +1,77 @@
+package classification;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Saving and loading of dataset caches, and their staleness.
+ */
+public class DatasetCacheTest {
+    private static final String SAMPLES = "1 1:2 2:1\n2 1:0 2:3\n1 1:1 2:0\n";
+
+    @TempDir
+    Path _directory;
+
+    @Test
+    public void loadsWhatParsingSaved() throws Exception{
+        File file = writeSamples(SAMPLES);
+        Dataset parsed = load(file);
+        Dataset cached = DatasetCache.load(file);
+
+        assertNotNull(cached);
+        assertEquals(parsed.getLabelOptions(), cached.getLabelOptions());
+        assertArrayEquals(parsed.getAttrOptions(), cached.getAttrOptions());
+        assertEquals(parsed.getSampleSize(), cached.getSampleSize());
+        for(int s = 0; s < parsed.getSampleSize(); s++){
+            assertEquals(parsed.getLabel(s), cached.getLabel(s));
+            assertArrayEquals(parsed.getSample(s, new int[2]), cached.getSample(s, new int[2]));
+        }
+    }
+
+    /**
+     * A file changed after its parsing started leaves a stale cache, even if changed before the cache is saved.
+     */
+    @Test
+    public void changeWhileParsingLeavesStaleCache() throws Exception{
+        File file = writeSamples(SAMPLES);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DatasetLoader datasetLoader = DatasetLoader.start(file, true, executor, 1);
+            Files.write(file.toPath(), "2 1:3 2:3\n".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+            assertEquals(true, file.setLastModified(file.lastModified() + 10_000));
+            datasetLoader.finish();
+        } finally {
+            executor.shutdown();
+        }
+        assertNull(DatasetCache.load(file));
+    }
+
+    private File writeSamples(final String samples) throws IOException{
+        File file = _directory.resolve("samples.train").toFile();
+        Files.write(file.toPath(), samples.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    private static Dataset load(final File file) throws Exception{
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return DatasetLoader.start(file, true, executor, 1).finish();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package classification;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Packing of values into keys of longs, within, across and exactly at the longs' boundaries.
+ */
+public class PackedKeysTest {
+    @Test
+    public void bitsOfOptions(){
+        assertEquals(0, PackedKeys.bitsOf(1));
+        assertEquals(1, PackedKeys.bitsOf(2));
+        assertEquals(2, PackedKeys.bitsOf(3));
+        assertEquals(2, PackedKeys.bitsOf(4));
+        assertEquals(3, PackedKeys.bitsOf(5));
+        assertEquals(1, PackedKeys.wordsOf(0));
+        assertEquals(1, PackedKeys.wordsOf(64));
+        assertEquals(2, PackedKeys.wordsOf(65));
+    }
+
+    @Test
+    public void packStraddlingBoundary(){
+        long[] key = new long[2];
+        int bit = PackedKeys.pack(key, 0, 5, 60);
+        bit = PackedKeys.pack(key, bit, 0xAB, 8);
+        assertEquals(68, bit);
+        assertArrayEquals(new long[]{5L | 0xBL << 60, 0xAL}, key);
+    }
+
+    @Test
+    public void packEndingExactlyAtBoundary(){
+        long[] key = new long[2];
+        int bit = PackedKeys.pack(key, 0, 1, 56);
+        bit = PackedKeys.pack(key, bit, 0xFF, 8);
+        assertEquals(64, bit);
+        bit = PackedKeys.pack(key, bit, 3, 2);
+        assertEquals(66, bit);
+        assertArrayEquals(new long[]{1L | 0xFFL << 56, 3L}, key);
+    }
+
+    @Test
+    public void packNoBitsAtEndOfFullKey(){
+        long[] key = new long[2];
+        int bit = PackedKeys.pack(key, 0, -1, 64);
+        bit = PackedKeys.pack(key, bit, -1, 64);
+        assertEquals(128, PackedKeys.pack(key, bit, 0, 0));
+        assertArrayEquals(new long[]{-1L, -1L}, key);
+    }
+
+    @Test
+    public void singleWordHashesAsKey(){
+        long word = 0x123456789ABCDEFL;
+        assertEquals(PackedKeys.hash(new long[]{word}), PackedKeys.hash(word));
+    }
+
+    /**
+     * A label of 2 bits and attributes of 126 bits fill two longs exactly, followed by attributes of a single option.
+     */
+    @Test
+    public void collapseKeyFillingWords(){
+        int[] attrOptions = new int[34];
+        for(int i = 0; i < 31; i++)
+            attrOptions[i] = 16;
+        attrOptions[31] = 4;
+        attrOptions[32] = 1;
+        attrOptions[33] = 1;
+
+        Dataset data = new Dataset(3, attrOptions.length, attrOptions, 6);
+        int[] sampleAttr = new int[attrOptions.length];
+        for(int s = 0; s < 6; s++){
+            for(int i = 0; i < 32; i++)
+                sampleAttr[i] = (s % 3 + i) % attrOptions[i];
+            data.setSample(s, s % 3 + 1, sampleAttr);
+        }
+
+        Dataset collapsed = DatasetCollapser.collapse(data);
+        assertEquals(3, collapsed.getSampleSize());
+        for(int d = 0; d < 3; d++){
+            assertEquals(d + 1, collapsed.getLabel(d));
+            assertEquals(2, collapsed.getWeight(d));
+            assertArrayEquals(data.getSample(d, new int[attrOptions.length]), collapsed.getSample(d, new int[attrOptions.length]));
+        }
+    }
+}
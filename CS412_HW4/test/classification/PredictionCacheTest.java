@@ -0,0 +1,73 @@
+package classification;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Lookups of a prediction cache on single-long and multi-long keys.
+ */
+public class PredictionCacheTest {
+    /* Predicts from a hash of the attributes, counting its calls */
+    private static final class HashPredictor implements Predictor {
+        private int _callCount;
+
+        @Override
+        public int predictSample(final int[] sampleAttr){
+            _callCount++;
+            return Math.floorMod(Arrays.hashCode(sampleAttr), 5) + 1;
+        }
+    }
+
+    @Test
+    public void hitsAfterMiss(){
+        HashPredictor predictor = new HashPredictor();
+        PredictionCache cache = new PredictionCache(predictor, new int[]{3, 4, 5}, 64);
+        int[] sampleAttr = {2, 3, 4};
+        int label = predictor.predictSample(sampleAttr);
+
+        assertEquals(label, cache.predictSample(sampleAttr));
+        assertEquals(label, cache.predictSample(sampleAttr));
+        assertEquals(1, cache.getKeyWords());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void bypassesOutOfRange(){
+        HashPredictor predictor = new HashPredictor();
+        PredictionCache cache = new PredictionCache(predictor, new int[]{3, 4}, 64);
+        cache.predictSample(new int[]{-1, 0});
+        cache.predictSample(new int[]{0, 4});
+        cache.predictSample(new int[]{0});
+        assertEquals(3, cache.getBypassCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    /**
+     * Attributes of 128 bits fill two longs exactly, followed by an attribute of a single option,
+     * as Dataset.expandTo() pads attributes.
+     */
+    @Test
+    public void keyFillingWords(){
+        int[] attrOptions = new int[33];
+        Arrays.fill(attrOptions, 16);
+        attrOptions[32] = 1;
+        HashPredictor predictor = new HashPredictor();
+        PredictionCache cache = new PredictionCache(predictor, attrOptions, 1024);
+        assertEquals(2, cache.getKeyWords());
+
+        for(int round = 0; round < 2; round++){
+            for(int s = 0; s < 16; s++){
+                int[] sampleAttr = new int[33];
+                Arrays.fill(sampleAttr, 0, 32, s);
+                assertEquals(Math.floorMod(Arrays.hashCode(sampleAttr), 5) + 1, cache.predictSample(sampleAttr));
+            }
+        }
+        assertEquals(16, cache.getMissCount());
+        assertEquals(16, cache.getHitCount());
+        assertEquals(16, predictor._callCount);
+    }
+}